@@ -0,0 +1,165 @@
+package bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import crux.Parser;
+import crux.ProgramGenerator;
+import crux.Scanner;
+import crux.Token;
+import mips.CodeGen;
+import types.TypeChecker;
+
+/*
+ * JMH benchmarks for each phase of the compiler, run over programs that
+ * crux.ProgramGenerator generates in process.  CodeGen cannot handle all of
+ * those yet, so it runs over SyntheticSource's smaller subset instead.
+ *
+ * Build against jmh-core and jmh-generator-annprocess together with ../src,
+ * then run org.openjdk.jmh.Main, e.g.
+ *
+ *     java -cp <classes>:<jmh jars> org.openjdk.jmh.Main bench.CompilerBenchmark -p functions=1000
+ *
+ * Besides the time per program, the "tokens" and "nodes" counters report
+ * scanner tokens/sec and parser AST nodes/sec.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompilerBenchmark {
+	
+	@State(Scope.Benchmark)
+	public static class Source
+	{
+		@Param({"10", "100", "1000"})
+		public int functions;
+		
+		@Param({"5"})
+		public int statements;
+		
+		@Param({"3"})
+		public int expressionDepth;
+		
+		@Param({"42"})
+		public long seed;
+		
+		public char[] program;
+		public char[] codeGenProgram;
+		public int nodes;
+		public ast.Command tree;
+		public TypeChecker checked;
+		public ast.Command codeGenTree;
+		public TypeChecker codeGenChecked;
+		
+		@Setup(Level.Trial)
+		public void generate()
+		{
+			ProgramGenerator.Shape shape = new ProgramGenerator.Shape();
+			shape.functions = functions;
+			shape.statements = statements;
+			shape.expressionDepth = expressionDepth;
+			program = ProgramGenerator.generate(seed, shape).toCharArray();
+			tree = parse(program);
+			nodes = ast.NodeCounter.count(tree);
+			checked = check(tree);
+			
+			codeGenProgram = SyntheticSource.codeGenProgram(functions, statements).toCharArray();
+			codeGenTree = parse(codeGenProgram);
+			codeGenChecked = check(codeGenTree);
+		}
+		
+		private static ast.Command parse(char[] source)
+		{
+			Parser p = new Parser(new Scanner(source));
+			ast.Command tree = p.parse();
+			if (p.hasError())
+				throw new IllegalStateException("Generated program does not parse:\n" + p.errorReport());
+			return tree;
+		}
+		
+		private static TypeChecker check(ast.Command tree)
+		{
+			TypeChecker tc = new TypeChecker();
+			if (!tc.check(tree))
+				throw new IllegalStateException("Generated program does not type check:\n" + tc.errorReport());
+			return tc;
+		}
+	}
+	
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	@State(Scope.Thread)
+	public static class Counters
+	{
+		public long tokens;
+		public long nodes;
+		
+		@Setup(Level.Iteration)
+		public void reset()
+		{
+			tokens = 0;
+			nodes = 0;
+		}
+	}
+	
+	// Assembly goes nowhere, print() is measured without disk I/O
+	private static final PrintStream sink = new PrintStream(new OutputStream() {
+		@Override
+		public void write(int b) {
+		}
+		
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	});
+	
+	@Benchmark
+	public int scan(Source source, Counters counters)
+	{
+		Scanner s = new Scanner(source.program);
+		int n = 1;
+		while (!s.next().is(Token.Kind.EOF))
+			n++;
+		counters.tokens += n;
+		return n;
+	}
+	
+	@Benchmark
+	public ast.Command parse(Source source, Counters counters)
+	{
+		ast.Command tree = new Parser(new Scanner(source.program)).parse();
+		counters.nodes += source.nodes;
+		return tree;
+	}
+	
+	@Benchmark
+	public boolean typeCheck(Source source)
+	{
+		return new TypeChecker().check(source.tree);
+	}
+	
+	@Benchmark
+	public void codeGen(Source source, Blackhole bh)
+	{
+		CodeGen cg = new CodeGen(source.codeGenChecked);
+		bh.consume(cg.generate(source.codeGenTree));
+		cg.getProgram().print(sink);
+	}
+}
@@ -0,0 +1,30 @@
+package bench;
+
+// Builds Crux programs of a given size in memory, so the benchmarks need no
+// input files.
+public class SyntheticSource {
+	
+	// Programs restricted to what mips.CodeGen can emit today: function
+	// definitions and calls with literal arguments. Everything else is
+	// generated by crux.ProgramGenerator.
+	public static String codeGenProgram(int functions, int statements)
+	{
+		StringBuilder sb = new StringBuilder();
+		for (int f = 0; f < functions; f++) {
+			sb.append("func f").append(f).append("(a : int, b : bool) : void {\n");
+			for (int s = 0; s < statements; s++) {
+				switch (s % 3) {
+				case 0:  sb.append("  ::printInt(").append(s).append(");\n"); break;
+				case 1:  sb.append("  ::printBool(not true);\n"); break;
+				default: sb.append("  ::printFloat(").append(s).append(".5);\n"); break;
+				}
+			}
+			sb.append("}\n");
+		}
+		sb.append("func main() : void {\n");
+		for (int f = 0; f < functions; f++)
+			sb.append("  ::f").append(f).append("(").append(f).append(", false);\n");
+		sb.append("}\n");
+		return sb.toString();
+	}
+}
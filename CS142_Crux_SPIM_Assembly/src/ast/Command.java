@@ -7,6 +7,11 @@ public abstract class Command implements Visitable {
 	private int lineNum;
 	private int charPos;
 	
+	// Type given to this node by the TypeChecker that checked it last,
+	// kept on the node so looking it up needs no hashing
+	private Object typeOwner;
+	private types.Type type;
+	
 	public Command(int lineNum, int charPos)
 	{
 		this.lineNum = lineNum;
@@ -23,6 +28,18 @@ public abstract class Command implements Visitable {
 		return charPos;
 	}
 	
+	// The type owner annotated this node with, or null if it did not
+	public types.Type annotatedType(Object owner)
+	{
+		return typeOwner == owner ? type : null;
+	}
+	
+	public void annotateType(Object owner, types.Type type)
+	{
+		this.typeOwner = owner;
+		this.type = type;
+	}
+	
 	@Override
 	public String toString()
 	{
@@ -31,10 +48,12 @@ public abstract class Command implements Visitable {
 
 	public static Expression newExpression(Expression leftSide, Token op, Expression rightSide)
 	{
-		int lineNum = op.lineNumber();
-		int charPos = op.charPosition();
-		
-		switch(op.kind())
+		return newExpression(leftSide, op.kind(), op.lineNumber(), op.charPosition(), rightSide);
+	}
+	
+	public static Expression newExpression(Expression leftSide, Token.Kind op, int lineNum, int charPos, Expression rightSide)
+	{
+		switch(op)
 		{
 		case ADD: return new Addition(lineNum, charPos, leftSide, rightSide);
 		case SUB: return new Subtraction(lineNum, charPos, leftSide, rightSide);
@@ -52,7 +71,7 @@ public abstract class Command implements Visitable {
 		case GREATER_EQUAL: return new Comparison(lineNum, charPos, leftSide, Comparison.Operation.GE, rightSide);
 		case GREATER_THAN:  return new Comparison(lineNum, charPos, leftSide, Comparison.Operation.GT, rightSide);
 		
-		default: return new Error(op.lineNumber(), op.charPosition(), "Unknown Operation: " + op);
+		default: return new Error(lineNum, charPos, "Unknown Operation: " + op);
 		}
 	}
 	
@@ -0,0 +1,188 @@
+package ast;
+
+// Counts the nodes of a syntax tree.
+public class NodeCounter implements CommandVisitor {
+	
+	private int count = 0;
+	
+	public static int count(Command tree)
+	{
+		NodeCounter counter = new NodeCounter();
+		tree.accept(counter);
+		return counter.count;
+	}
+	
+	public int count()
+	{
+		return count;
+	}
+	
+	@Override
+	public void visit(ExpressionList node) {
+		count++;
+		for (Expression e : node)
+			e.accept(this);
+	}
+
+	@Override
+	public void visit(DeclarationList node) {
+		count++;
+		for (Declaration d : node)
+			d.accept(this);
+	}
+
+	@Override
+	public void visit(StatementList node) {
+		count++;
+		for (Statement s : node)
+			s.accept(this);
+	}
+
+	@Override
+	public void visit(AddressOf node) {
+		count++;
+	}
+
+	@Override
+	public void visit(LiteralBool node) {
+		count++;
+	}
+
+	@Override
+	public void visit(LiteralFloat node) {
+		count++;
+	}
+
+	@Override
+	public void visit(LiteralInt node) {
+		count++;
+	}
+
+	@Override
+	public void visit(VariableDeclaration node) {
+		count++;
+	}
+
+	@Override
+	public void visit(ArrayDeclaration node) {
+		count++;
+	}
+
+	@Override
+	public void visit(FunctionDefinition node) {
+		count++;
+		node.body().accept(this);
+	}
+
+	@Override
+	public void visit(Addition node) {
+		count++;
+		node.leftSide().accept(this);
+		node.rightSide().accept(this);
+	}
+
+	@Override
+	public void visit(Subtraction node) {
+		count++;
+		node.leftSide().accept(this);
+		node.rightSide().accept(this);
+	}
+
+	@Override
+	public void visit(Multiplication node) {
+		count++;
+		node.leftSide().accept(this);
+		node.rightSide().accept(this);
+	}
+
+	@Override
+	public void visit(Division node) {
+		count++;
+		node.leftSide().accept(this);
+		node.rightSide().accept(this);
+	}
+
+	@Override
+	public void visit(LogicalAnd node) {
+		count++;
+		node.leftSide().accept(this);
+		node.rightSide().accept(this);
+	}
+
+	@Override
+	public void visit(LogicalOr node) {
+		count++;
+		node.leftSide().accept(this);
+		node.rightSide().accept(this);
+	}
+
+	@Override
+	public void visit(LogicalNot node) {
+		count++;
+		node.expression().accept(this);
+	}
+
+	@Override
+	public void visit(Comparison node) {
+		count++;
+		node.leftSide().accept(this);
+		node.rightSide().accept(this);
+	}
+
+	@Override
+	public void visit(Dereference node) {
+		count++;
+		node.expression().accept(this);
+	}
+
+	@Override
+	public void visit(Index node) {
+		count++;
+		node.base().accept(this);
+		node.amount().accept(this);
+	}
+
+	@Override
+	public void visit(Assignment node) {
+		count++;
+		node.destination().accept(this);
+		node.source().accept(this);
+	}
+
+	@Override
+	public void visit(Call node) {
+		count++;
+		node.arguments().accept(this);
+	}
+
+	@Override
+	public void visit(IfElseBranch node) {
+		count++;
+		node.condition().accept(this);
+		node.thenBlock().accept(this);
+		node.elseBlock().accept(this);
+	}
+
+	@Override
+	public void visit(WhileLoop node) {
+		count++;
+		node.condition().accept(this);
+		node.body().accept(this);
+	}
+
+	@Override
+	public void visit(Return node) {
+		count++;
+		node.argument().accept(this);
+	}
+
+	@Override
+	public void visit(Error node) {
+		count++;
+	}
+
+	@Override
+	public void visit(ReadSymbol node) {
+		count++;
+	}
+}
@@ -0,0 +1,132 @@
+package crux;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/*
+ * Compiles many Crux files at once on a work-stealing pool.  Each file gets
+ * its own Scanner, Parser, TypeChecker and CodeGen and writes its own .asm,
+ * results are reported in the order the files were given.
+ *
+ * usage: BatchCompiler [-j threads] [--cache dir] (file.crx | directory) ...
+ */
+public class BatchCompiler {
+    
+    public static void main(String[] args) {
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        BuildCache cache = null;
+        List<String> files = new ArrayList<String>();
+        
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-j") && i + 1 < args.length) {
+                parallelism = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--cache") && i + 1 < args.length) {
+                cache = new BuildCache(new File(args[++i]));
+            } else {
+                addSources(new File(args[i]), files);
+            }
+        }
+        
+        if (files.isEmpty()) {
+            System.err.println("No input files specified.  Compiler terminating...");
+            System.exit(-1);
+        }
+        
+        int failures = 0;
+        for (CompileResult result : compileAll(files, parallelism, cache)) {
+            if (result.succeeded()) {
+                System.out.println((result.fromCache() ? "Up to date " : "Compiled ")
+                    + result.sourceFile() + " -> " + result.asmFilename());
+            } else {
+                failures++;
+                System.out.print(result.report());
+            }
+        }
+        System.exit(failures == 0 ? 0 : 1);
+    }
+    
+    // Directories contribute their .crx files in name order
+    private static void addSources(File f, List<String> files)
+    {
+        if (!f.isDirectory()) {
+            files.add(f.getPath());
+            return;
+        }
+        File[] entries = f.listFiles();
+        if (entries == null)
+            return;
+        Arrays.sort(entries);
+        for (File entry : entries) {
+            if (entry.isFile() && entry.getName().endsWith(".crx"))
+                files.add(entry.getPath());
+        }
+    }
+    
+    // Compiles every file and writes the .asm of each one that succeeds.
+    // The returned list lines up with sourceFiles. cache may be null.
+    public static List<CompileResult> compileAll(List<String> sourceFiles, int parallelism, final BuildCache cache)
+    {
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+        try {
+            List<Callable<CompileResult>> jobs = new ArrayList<Callable<CompileResult>>();
+            for (final String sourceFile : sourceFiles) {
+                jobs.add(new Callable<CompileResult>() {
+                    @Override
+                    public CompileResult call() {
+                        return compileAndWrite(sourceFile, cache);
+                    }
+                });
+            }
+            
+            List<CompileResult> results = new ArrayList<CompileResult>();
+            List<Future<CompileResult>> futures = pool.invokeAll(jobs);
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    results.add(CompileResult.failure(sourceFiles.get(i), CompileResult.Status.INTERNAL_ERROR,
+                        "Internal error compiling file " + sourceFiles.get(i) + ": " + e.getCause() + "\n"));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                }
+            }
+            return results;
+        } finally {
+            pool.shutdown();
+        }
+    }
+    
+    private static CompileResult compileAndWrite(String sourceFile, BuildCache cache)
+    {
+        CompileResult result;
+        try {
+            if (cache == null)
+                result = Compiler.compile(sourceFile);
+            else
+                result = Compiler.compile(sourceFile, cache);
+        } catch (RuntimeException e) {
+            // one broken file must not take the rest of the batch down
+            return CompileResult.failure(sourceFile, CompileResult.Status.INTERNAL_ERROR,
+                "Internal error compiling file " + sourceFile + ": " + e + "\n");
+        }
+        if (!result.succeeded())
+            return result;
+        
+        String asmFilename = result.asmFilename();
+        try {
+            Compiler.writeAssembly(result, asmFilename);
+        } catch (IOException e) {
+            return CompileResult.failure(sourceFile, CompileResult.Status.WRITE_ERROR,
+                "Error writing assembly file: \"" + asmFilename + "\"\n");
+        }
+        return result;
+    }
+}
@@ -0,0 +1,162 @@
+package crux;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/*
+ * On-disk cache of generated assembly, keyed by a SHA-256 of the source text
+ * and a fingerprint of the compiler itself.  The fingerprint hashes every
+ * class file the compiler was loaded from, its classpath directory or jar,
+ * so entries written by a different build of the compiler are never used.
+ * Only successful compiles are stored.
+ */
+public class BuildCache {
+    
+    private static byte[] fingerprint;
+    
+    private File dir;
+    
+    public BuildCache(File dir)
+    {
+        this.dir = dir;
+    }
+    
+    // Returns the cached assembly for this source, or null on a miss
+    public String lookup(byte[] source) throws IOException
+    {
+        File entry = entryFor(source);
+        if (!entry.isFile())
+            return null;
+        return new String(Files.readAllBytes(entry.toPath()), StandardCharsets.UTF_8);
+    }
+    
+    public void store(byte[] source, String assembly) throws IOException
+    {
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("Cannot create cache directory " + dir);
+        
+        // write aside and rename, so a concurrent reader never sees half a file
+        File entry = entryFor(source);
+        File temp = File.createTempFile(entry.getName(), ".tmp", dir);
+        try {
+            Files.write(temp.toPath(), assembly.getBytes(StandardCharsets.UTF_8));
+            Files.move(temp.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            temp.delete();
+        }
+    }
+    
+    private File entryFor(byte[] source) throws IOException
+    {
+        MessageDigest md = sha256();
+        md.update(compilerFingerprint());
+        md.update(source);
+        
+        StringBuilder name = new StringBuilder();
+        for (byte b : md.digest())
+            name.append(String.format("%02x", b));
+        return new File(dir, name.append(".asm").toString());
+    }
+    
+    private static synchronized byte[] compilerFingerprint() throws IOException
+    {
+        if (fingerprint != null)
+            return fingerprint;
+        
+        CodeSource code = BuildCache.class.getProtectionDomain().getCodeSource();
+        if (code == null || code.getLocation() == null)
+            throw new IOException("Cannot locate the compiler's class files to fingerprint them");
+        Path location;
+        try {
+            location = Paths.get(code.getLocation().toURI());
+        } catch (URISyntaxException e) {
+            throw new IOException(e);
+        }
+        
+        // every class, nested and auxiliary ones included, in a fixed order
+        MessageDigest md = sha256();
+        if (Files.isDirectory(location)) {
+            TreeMap<String, Path> classes = new TreeMap<String, Path>();
+            collectClasses(location, location, classes);
+            for (Map.Entry<String, Path> c : classes.entrySet()) {
+                md.update(c.getKey().getBytes(StandardCharsets.UTF_8));
+                md.update(Files.readAllBytes(c.getValue()));
+            }
+        } else {
+            JarFile jar = new JarFile(location.toFile());
+            try {
+                TreeMap<String, JarEntry> classes = new TreeMap<String, JarEntry>();
+                for (Enumeration<JarEntry> e = jar.entries(); e.hasMoreElements(); ) {
+                    JarEntry entry = e.nextElement();
+                    if (entry.getName().endsWith(".class"))
+                        classes.put(entry.getName(), entry);
+                }
+                for (Map.Entry<String, JarEntry> c : classes.entrySet()) {
+                    md.update(c.getKey().getBytes(StandardCharsets.UTF_8));
+                    InputStream in = jar.getInputStream(c.getValue());
+                    try {
+                        md.update(readAll(in));
+                    } finally {
+                        in.close();
+                    }
+                }
+            } finally {
+                jar.close();
+            }
+        }
+        fingerprint = md.digest();
+        return fingerprint;
+    }
+    
+    // Adds the class files under dir, keyed by their path from root
+    private static void collectClasses(Path root, Path dir, TreeMap<String, Path> classes) throws IOException
+    {
+        DirectoryStream<Path> entries = Files.newDirectoryStream(dir);
+        try {
+            for (Path p : entries) {
+                if (Files.isDirectory(p))
+                    collectClasses(root, p, classes);
+                else if (p.getFileName().toString().endsWith(".class"))
+                    classes.put(root.relativize(p).toString().replace(File.separatorChar, '/'), p);
+            }
+        } finally {
+            entries.close();
+        }
+    }
+    
+    private static byte[] readAll(InputStream in) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        int n;
+        while ((n = in.read(buf)) != -1)
+            out.write(buf, 0, n);
+        return out.toByteArray();
+    }
+    
+    private static MessageDigest sha256()
+    {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
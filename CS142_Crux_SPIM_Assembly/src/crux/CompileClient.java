@@ -0,0 +1,89 @@
+package crux;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/*
+ * Thin front end for a CompileServer listening on a Unix domain socket.
+ * Sends each file to the server and writes the returned assembly next to
+ * it, the way Compiler does; errors are printed and set the exit code.
+ *
+ * usage: CompileClient socket-path file.crx ...
+ */
+public class CompileClient {
+    
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: CompileClient socket-path file.crx ...");
+            System.exit(-1);
+        }
+        
+        SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+        channel.connect(UnixDomainSocketAddress.of(args[0]));
+        BufferedReader in = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8));
+        Writer out = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8));
+        
+        int exitCode = 0;
+        try {
+            for (int i = 1; i < args.length; i++) {
+                // the server may run in another directory
+                String sourceFile = new File(args[i]).getAbsolutePath();
+                out.write(sourceFile + "\n");
+                out.flush();
+                
+                String[] header = readLine(in).split(" ");
+                int lines = Integer.parseInt(header[header.length - 1]);
+                if (header[0].equals("OK"))
+                    receiveAssembly(in, CompileResult.asmFilename(sourceFile), lines);
+                else {
+                    for (int n = 0; n < lines; n++)
+                        System.out.println(readLine(in));
+                    exitCode = Integer.parseInt(header[1]);
+                }
+            }
+        } catch (EOFException e) {
+            System.err.println("server closed connection");
+            exitCode = CompileResult.Status.INTERNAL_ERROR.exitCode();
+        }
+        channel.close();
+        System.exit(exitCode);
+    }
+    
+    // Writes the assembly lines of a response, a partial file is deleted
+    private static void receiveAssembly(BufferedReader in, String asmFilename, int lines) throws IOException
+    {
+        File asmFile = new File(asmFilename);
+        PrintStream ps = new PrintStream(asmFile, StandardCharsets.UTF_8);
+        boolean complete = false;
+        try {
+            for (int n = 0; n < lines; n++)
+                ps.println(readLine(in));
+            complete = true;
+        } finally {
+            ps.close();
+            if (!complete)
+                asmFile.delete();
+        }
+    }
+    
+    // The next line of a response, EOFException if the server hung up mid-way
+    private static String readLine(BufferedReader in) throws IOException
+    {
+        String line = in.readLine();
+        if (line == null)
+            throw new EOFException("server closed connection");
+        return line;
+    }
+}
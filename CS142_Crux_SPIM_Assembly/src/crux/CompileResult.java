@@ -0,0 +1,160 @@
+package crux;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import mips.AssemblyWriter;
+import mips.Program;
+
+// The outcome of running one source file through the compiler.
+public class CompileResult {
+	
+	public static enum Status {
+		OK(0),
+		READ_ERROR(-2),
+		PARSE_ERROR(-3),
+		TYPE_ERROR(-4),
+		CODEGEN_ERROR(-5),
+		WRITE_ERROR(-6),
+		INTERNAL_ERROR(-7);
+		
+		private int exitCode;
+		
+		Status(int exitCode)
+		{
+			this.exitCode = exitCode;
+		}
+		
+		public int exitCode()
+		{
+			return exitCode;
+		}
+	}
+	
+	private String sourceFile;
+	private Status status;
+	private String report;
+	private Program program;
+	private String assembly;  // program already rendered, if it was
+	private boolean fromCache;
+	
+	CompileResult(String sourceFile, Status status, String report, Program program, String assembly, boolean fromCache)
+	{
+		this.sourceFile = sourceFile;
+		this.status = status;
+		this.report = report;
+		this.program = program;
+		this.assembly = assembly;
+		this.fromCache = fromCache;
+	}
+	
+	public static CompileResult success(String sourceFile, Program program)
+	{
+		return new CompileResult(sourceFile, Status.OK, "", program, null, false);
+	}
+	
+	// The assembly was written to the .asm file as it was generated
+	public static CompileResult streamed(String sourceFile)
+	{
+		return new CompileResult(sourceFile, Status.OK, "", null, null, false);
+	}
+	
+	public static CompileResult cached(String sourceFile, String assembly)
+	{
+		return new CompileResult(sourceFile, Status.OK, "", null, assembly, true);
+	}
+	
+	public static CompileResult failure(String sourceFile, Status status, String report)
+	{
+		return new CompileResult(sourceFile, status, report, null, null, false);
+	}
+	
+	public String sourceFile()
+	{
+		return sourceFile;
+	}
+	
+	public Status status()
+	{
+		return status;
+	}
+	
+	public boolean succeeded()
+	{
+		return status == Status.OK;
+	}
+	
+	// What the compiler printed for a failure, empty on success
+	public String report()
+	{
+		return report;
+	}
+	
+	// The generated program, null unless the compile succeeded and
+	// actually ran (a cache hit only has the assembly text)
+	public Program program()
+	{
+		return program;
+	}
+	
+	public boolean fromCache()
+	{
+		return fromCache;
+	}
+	
+	// The generated assembly as text, rendered from the program on first
+	// use, null if it was streamed
+	public String assembly()
+	{
+		if (assembly == null && program != null) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			try {
+				AssemblyWriter w = new AssemblyWriter(out);
+				program.write(w);
+				w.flush();
+			} catch (IOException e) {
+				// cannot happen writing to memory
+				throw new RuntimeException(e);
+			}
+			assembly = new String(out.toByteArray(), StandardCharsets.UTF_8);
+		}
+		return assembly;
+	}
+	
+	// Writes the generated assembly, in the same encoding as write()
+	public void print(PrintStream s)
+	{
+		AssemblyWriter w = new AssemblyWriter(s);
+		try {
+			write(w);
+			w.flush();
+		} catch (IOException e) {
+			// a PrintStream keeps its errors to itself
+			throw new RuntimeException(e);
+		}
+	}
+	
+	public void write(AssemblyWriter w) throws IOException
+	{
+		if (assembly != null)
+			w.write(assembly);
+		else if (program != null)
+			program.write(w);
+	}
+	
+	public String asmFilename()
+	{
+		return asmFilename(sourceFile);
+	}
+	
+	// file.crx -> file.asm; any other name gets .asm appended, so the
+	// assembly never lands on top of its own source
+	static String asmFilename(String sourceFile)
+	{
+		if (sourceFile.endsWith(".crx"))
+			return sourceFile.substring(0, sourceFile.length() - ".crx".length()) + ".asm";
+		return sourceFile + ".asm";
+	}
+}
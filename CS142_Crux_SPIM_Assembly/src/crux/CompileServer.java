@@ -0,0 +1,158 @@
+package crux;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+ * A long running compiler that keeps one warmed up JVM for many compiles.
+ *
+ * usage: CompileServer [--cache dir] (--stdio | --socket path)
+ *
+ * The protocol is line based.  A client sends the path of a source file on a
+ * line of its own and gets back a header line followed by that many lines:
+ *
+ *     OK <lines>              the generated assembly
+ *     ERROR <code> <lines>    the compiler's error report, code as in Compiler
+ *
+ * With --stdio the server answers requests on stdin/stdout until stdin is
+ * closed.  With --socket it listens on a Unix domain socket and serves each
+ * connection on its own thread, see CompileClient.
+ */
+public class CompileServer {
+    
+    private BuildCache cache;
+    
+    public CompileServer(BuildCache cache)
+    {
+        this.cache = cache;
+    }
+    
+    public static void main(String[] args) throws IOException {
+        BuildCache cache = null;
+        String socketPath = null;
+        boolean stdio = false;
+        
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--cache") && i + 1 < args.length)
+                cache = new BuildCache(new File(args[++i]));
+            else if (args[i].equals("--socket") && i + 1 < args.length)
+                socketPath = args[++i];
+            else if (args[i].equals("--stdio"))
+                stdio = true;
+        }
+        
+        CompileServer server = new CompileServer(cache);
+        if (socketPath != null) {
+            server.listen(new File(socketPath).toPath());
+        } else if (stdio) {
+            server.serve(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)),
+                         new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)));
+        } else {
+            System.err.println("usage: CompileServer [--cache dir] (--stdio | --socket path)");
+            System.exit(-1);
+        }
+    }
+    
+    public void listen(Path socketPath) throws IOException
+    {
+        Files.deleteIfExists(socketPath);
+        ServerSocketChannel listener = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        listener.bind(UnixDomainSocketAddress.of(socketPath));
+        socketPath.toFile().deleteOnExit();
+        
+        ExecutorService workers = Executors.newCachedThreadPool();
+        try {
+            while (true) {
+                final SocketChannel client = listener.accept();
+                workers.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            serve(new BufferedReader(new InputStreamReader(Channels.newInputStream(client), StandardCharsets.UTF_8)),
+                                  new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(client), StandardCharsets.UTF_8)));
+                        } catch (IOException e) {
+                            // client went away, nothing to answer
+                        } finally {
+                            try {
+                                client.close();
+                            } catch (IOException e) {
+                            }
+                        }
+                    }
+                });
+            }
+        } finally {
+            workers.shutdown();
+            listener.close();
+        }
+    }
+    
+    // Answers one request per line until the input ends
+    public void serve(BufferedReader in, Writer out) throws IOException
+    {
+        String sourceFile;
+        while ((sourceFile = in.readLine()) != null) {
+            if (sourceFile.isEmpty())
+                continue;
+            respond(compile(sourceFile), out);
+            out.flush();
+        }
+    }
+    
+    private CompileResult compile(String sourceFile)
+    {
+        try {
+            if (cache == null)
+                return Compiler.compile(sourceFile);
+            return Compiler.compile(sourceFile, cache);
+        } catch (StackOverflowError e) {
+            // input nested deeper than the recursive phases can go, the
+            // stack is unwound by now and the server carries on
+            return internalError(sourceFile, e);
+        } catch (VirtualMachineError e) {
+            throw e;
+        } catch (RuntimeException | Error e) {
+            return internalError(sourceFile, e);
+        }
+    }
+    
+    private static CompileResult internalError(String sourceFile, Throwable e)
+    {
+        return CompileResult.failure(sourceFile, CompileResult.Status.INTERNAL_ERROR,
+            "Internal error compiling file " + sourceFile + ": " + e + "\n");
+    }
+    
+    private static void respond(CompileResult result, Writer out) throws IOException
+    {
+        String body = result.succeeded() ? result.assembly() : result.report();
+
+        if (!body.isEmpty() && !body.endsWith("\n"))
+            body += "\n";
+        int lines = 0;
+        for (int i = 0; i < body.length(); i++) {
+            if (body.charAt(i) == '\n')
+                lines++;
+        }
+        
+        if (result.succeeded())
+            out.write("OK " + lines + "\n");
+        else
+            out.write("ERROR " + result.status().exitCode() + " " + lines + "\n");
+        out.write(body);
+    }
+}
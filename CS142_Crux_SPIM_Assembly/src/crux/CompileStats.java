@@ -0,0 +1,247 @@
+package crux;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+
+// Wall time and allocation of each compiler phase for one file, plus the
+// size of what each phase produced.  Allocation comes from the JVM's
+// per-thread counter and is -1 where the JVM does not provide one.
+public class CompileStats {
+
+	public static enum Phase {
+		READ("read"),
+		PARSE("parse"),          // scanning happens on demand inside parsing
+		TYPE_CHECK("typecheck"),
+		CODEGEN("codegen"),
+		OPTIMIZE("optimize"),
+		PRINT("print");
+
+		private String label;
+
+		Phase(String label)
+		{
+			this.label = label;
+		}
+
+		public String label()
+		{
+			return label;
+		}
+	}
+
+	// Shared by compiles nobody asked statistics for, records nothing
+	public static final CompileStats NONE = new CompileStats(null, false);
+
+	private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+	private String sourceFile;
+	private boolean enabled;
+	private long[] nanos = new long[Phase.values().length];
+	private long[] allocated = new long[Phase.values().length];
+	private boolean[] ran = new boolean[Phase.values().length];
+	private long tokens = -1;
+	private long nodes = -1;
+	private long instructions = -1;
+	private long eliminated = -1;
+	private CompileResult.Status status;
+
+	private Phase current;
+	private long startNanos;
+	private long startAllocated;
+
+	public CompileStats(String sourceFile)
+	{
+		this(sourceFile, true);
+	}
+
+	private CompileStats(String sourceFile, boolean enabled)
+	{
+		this.sourceFile = sourceFile;
+		this.enabled = enabled;
+	}
+
+	public boolean enabled()
+	{
+		return enabled;
+	}
+
+	// Phases run one at a time on the calling thread
+	public void begin(Phase phase)
+	{
+		if (!enabled)
+			return;
+		current = phase;
+		startAllocated = allocatedBytes();
+		startNanos = System.nanoTime();
+	}
+
+	public void end()
+	{
+		if (!enabled || current == null)
+			return;
+		long elapsed = System.nanoTime() - startNanos;
+		long bytes = allocatedBytes();
+		int i = current.ordinal();
+		nanos[i] += elapsed;
+		allocated[i] = bytes < 0 || startAllocated < 0 ? -1 : allocated[i] + bytes - startAllocated;
+		ran[i] = true;
+		current = null;
+	}
+
+	private static long allocatedBytes()
+	{
+		if (!(threads instanceof com.sun.management.ThreadMXBean))
+			return -1;
+		com.sun.management.ThreadMXBean t = (com.sun.management.ThreadMXBean)threads;
+		if (!t.isThreadAllocatedMemorySupported() || !t.isThreadAllocatedMemoryEnabled())
+			return -1;
+		return t.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	void setTokens(long tokens)
+	{
+		this.tokens = tokens;
+	}
+
+	void setNodes(long nodes)
+	{
+		this.nodes = nodes;
+	}
+
+	void setInstructions(long instructions)
+	{
+		this.instructions = instructions;
+	}
+
+	void setEliminated(long eliminated)
+	{
+		this.eliminated = eliminated;
+	}
+
+	void setStatus(CompileResult.Status status)
+	{
+		this.status = status;
+	}
+
+	public boolean ran(Phase phase)
+	{
+		return ran[phase.ordinal()];
+	}
+
+	public long nanos(Phase phase)
+	{
+		return nanos[phase.ordinal()];
+	}
+
+	// -1 if unknown
+	public long allocatedBytes(Phase phase)
+	{
+		return allocated[phase.ordinal()];
+	}
+
+	// The counts are -1 when the phase producing them did not run
+	public long tokens()
+	{
+		return tokens;
+	}
+
+	public long nodes()
+	{
+		return nodes;
+	}
+
+	public long instructions()
+	{
+		return instructions;
+	}
+
+	// Instructions removed by the peephole optimizer
+	public long eliminated()
+	{
+		return eliminated;
+	}
+
+	public String toString()
+	{
+		StringBuilder sb = new StringBuilder();
+		sb.append("Compile statistics for ").append(sourceFile);
+		if (status != null)
+			sb.append(" (").append(status).append(')');
+		sb.append('\n');
+		sb.append(String.format(Locale.ROOT, "  %-10s %12s %16s%n", "phase", "time (ms)", "allocated (KB)"));
+		long totalNanos = 0;
+		long totalBytes = 0;
+		for (Phase p : Phase.values()) {
+			if (!ran(p))
+				continue;
+			long bytes = allocatedBytes(p);
+			totalNanos += nanos(p);
+			totalBytes = bytes < 0 || totalBytes < 0 ? -1 : totalBytes + bytes;
+			sb.append(String.format(Locale.ROOT, "  %-10s %12.3f %16s%n", p.label(), nanos(p) / 1e6, kilobytes(bytes)));
+		}
+		sb.append(String.format(Locale.ROOT, "  %-10s %12.3f %16s%n", "total", totalNanos / 1e6, kilobytes(totalBytes)));
+		sb.append("  tokens ").append(count(tokens));
+		sb.append(", AST nodes ").append(count(nodes));
+		sb.append(", instructions ").append(count(instructions));
+		sb.append(", eliminated ").append(count(eliminated)).append('\n');
+		return sb.toString();
+	}
+
+	private static String kilobytes(long bytes)
+	{
+		return bytes < 0 ? "n/a" : String.format(Locale.ROOT, "%.1f", bytes / 1024.0);
+	}
+
+	private static String count(long n)
+	{
+		return n < 0 ? "n/a" : Long.toString(n);
+	}
+
+	// One JSON object on a single line, unknown values are null
+	public String toJson()
+	{
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\"file\":").append(jsonString(sourceFile));
+		sb.append(",\"status\":").append(status == null ? "null" : jsonString(status.name()));
+		sb.append(",\"phases\":{");
+		boolean first = true;
+		for (Phase p : Phase.values()) {
+			if (!ran(p))
+				continue;
+			if (!first)
+				sb.append(',');
+			first = false;
+			sb.append('"').append(p.label()).append("\":{\"nanos\":").append(nanos(p));
+			sb.append(",\"allocatedBytes\":").append(jsonCount(allocatedBytes(p))).append('}');
+		}
+		sb.append("},\"tokens\":").append(jsonCount(tokens));
+		sb.append(",\"nodes\":").append(jsonCount(nodes));
+		sb.append(",\"instructions\":").append(jsonCount(instructions));
+		sb.append(",\"eliminated\":").append(jsonCount(eliminated));
+		sb.append('}');
+		return sb.toString();
+	}
+
+	private static String jsonCount(long n)
+	{
+		return n < 0 ? "null" : Long.toString(n);
+	}
+
+	private static String jsonString(String s)
+	{
+		if (s == null)
+			return "null";
+		StringBuilder sb = new StringBuilder("\"");
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\')
+				sb.append('\\').append(c);
+			else if (c < 0x20)
+				sb.append(String.format("\\u%04x", (int)c));
+			else
+				sb.append(c);
+		}
+		return sb.append('"').toString();
+	}
+}
@@ -13,12 +13,19 @@
 
 package crux;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import mips.AssemblyWriter;
 import mips.CodeGen;
-import mips.Program;
+import mips.PeepholeOptimizer;
 
 public class Compiler {
     public static String studentName = "John Palomo";
@@ -34,52 +41,278 @@ public class Compiler {
 
    		//String sourceFile = args[0];
 		String sourceFile = "/Users/Palomo/Documents/School/Graduate/S_2014/CS_142A_Compilers_and_Interpreters/ProjectStubs/tests/test01.crx";
+        String statsFormat = null;
+        boolean stream = false;
+        boolean tokens = false;
+        BuildCache cache = null;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--stream"))
+                stream = true;
+            else if (arg.equals("--tokens"))
+                tokens = true;
+            else if (arg.equals("--cache") && i + 1 < args.length)
+                cache = new BuildCache(new File(args[++i]));
+            else if (arg.equals("--stats"))
+                statsFormat = "text";
+            else if (arg.startsWith("--stats="))
+                statsFormat = arg.substring("--stats=".length());
+            else
+                sourceFile = arg;
+        }
+        if (statsFormat != null && !statsFormat.equals("text") && !statsFormat.equals("json")) {
+            System.err.println("Unknown stats format " + statsFormat + ", expected text or json.");
+            System.exit(-1);
+        }
+        if (stream && cache != null) {
+            // the cache stores whole assembly text, a stream never has it
+            System.err.println("--stream and --cache cannot be used together.");
+            System.exit(-1);
+        }
+        
+        if (tokens) {
+            System.exit(dumpTokens(sourceFile));
+        }
+        
+        CompileStats stats = statsFormat == null ? CompileStats.NONE : new CompileStats(sourceFile);
+        CompileResult result;
+        if (stream)
+            result = compileStreaming(sourceFile, stats);
+        else if (cache != null)
+            result = compile(sourceFile, cache, stats);
+        else
+            result = compile(sourceFile, stats);
+        if (!result.succeeded()) {
+            if (result.status() == CompileResult.Status.READ_ERROR)
+                System.err.print(result.report());
+            else
+                System.out.print(result.report());
+            printStats(stats, result.status(), statsFormat);
+            System.exit(result.status().exitCode());
+        }
+        if (stream) {
+            // already written function by function
+            printStats(stats, result.status(), statsFormat);
+            return;
+        }
+        
+        String asmFilename = result.asmFilename();
+        try {
+            stats.begin(CompileStats.Phase.PRINT);
+            writeAssembly(result, asmFilename);
+            stats.end();
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.err.println("Error writing assembly file: \"" + asmFilename + "\"");
+            printStats(stats, CompileResult.Status.WRITE_ERROR, statsFormat);
+            System.exit(-6);
+		}	
+        printStats(stats, result.status(), statsFormat);
+    }
+    
+    // Prints every token of the file, one per line, and returns the exit code.
+    // The tokens are held in a TokenArray, so large files stay cheap.
+    private static int dumpTokens(String sourceFile)
+    {
+        TokenArray tokens;
+        try {
+            tokens = TokenArray.scan(new Scanner(new FileReader(sourceFile)));
+        } catch (IOException e) {
+            System.err.print(readError(sourceFile, e).report());
+            return CompileResult.Status.READ_ERROR.exitCode();
+        }
+        PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 64 * 1024));
+        for (int i = 0; i < tokens.size(); i++)
+            out.println(tokens.get(i));
+        out.flush();
+        return 0;
+    }
+    
+    private static void printStats(CompileStats stats, CompileResult.Status status, String format)
+    {
+        if (!stats.enabled())
+            return;
+        stats.setStatus(status);
+        if (format.equals("json"))
+            System.out.println(stats.toJson());
+        else
+            System.out.print(stats);
+    }
+    
+    // Runs the scanner, parser, type checker and code generator over one
+    // file. Every call builds its own instances, so calls may run in parallel.
+    public static CompileResult compile(String sourceFile)
+    {
+        return compile(sourceFile, CompileStats.NONE);
+    }
+    
+    // Same as compile(sourceFile), recording how long each phase took
+    public static CompileResult compile(String sourceFile, CompileStats stats)
+    {
         Scanner s = null;
 
         try {
+            stats.begin(CompileStats.Phase.READ);
             s = new Scanner(new FileReader(sourceFile));
+            stats.end();
         } catch (IOException e) {
-            e.printStackTrace();
-            System.err.println("Error accessing the source file: \"" + sourceFile + "\"");
-            System.exit(-2);
+            return readError(sourceFile, e);
         }
+        return compile(sourceFile, s, stats);
+    }
+    
+    // Same as compile(sourceFile), but reuses the assembly from an earlier
+    // compile of identical source when the cache has it
+    public static CompileResult compile(String sourceFile, BuildCache cache)
+    {
+        return compile(sourceFile, cache, CompileStats.NONE);
+    }
+    
+    // Same as compile(sourceFile, cache), recording the phases of a miss
+    public static CompileResult compile(String sourceFile, BuildCache cache, CompileStats stats)
+    {
+        byte[] source;
+        try {
+            stats.begin(CompileStats.Phase.READ);
+            source = Files.readAllBytes(Paths.get(sourceFile));
+            stats.end();
+        } catch (IOException e) {
+            return readError(sourceFile, e);
+        }
+        
+        try {
+            String assembly = cache.lookup(source);
+            if (assembly != null)
+                return CompileResult.cached(sourceFile, assembly);
+        } catch (IOException e) {
+            // an unreadable cache entry is just a miss
+        }
+        
+        CompileResult result = compile(sourceFile, new Scanner(new String(source, Charset.defaultCharset())), stats);
+        if (!result.succeeded())
+            return result;
+        
+        try {
+            cache.store(source, result.assembly());
+        } catch (IOException e) {
+            // the compile itself succeeded, failing to cache it is harmless
+        }
+        return result;
+    }
+    
+    // Same as compile(sourceFile, stats), but writes each function to the
+    // .asm file as soon as its code is generated, so the whole program is
+    // never held in memory.  On failure no .asm file is left behind.
+    public static CompileResult compileStreaming(String sourceFile, CompileStats stats)
+    {
+        Scanner s = null;
 
+        try {
+            stats.begin(CompileStats.Phase.READ);
+            s = new Scanner(new FileReader(sourceFile));
+            stats.end();
+        } catch (IOException e) {
+            return readError(sourceFile, e);
+        }
+        
+        String asmFilename = CompileResult.asmFilename(sourceFile);
+        CompileResult result = null;
+        try {
+            AssemblyWriter out = AssemblyWriter.open(asmFilename);
+            try {
+                result = compile(sourceFile, s, stats, out);
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            result = CompileResult.failure(sourceFile, CompileResult.Status.WRITE_ERROR,
+                "Error writing assembly file: \"" + asmFilename + "\"\n");
+        } finally {
+            // result is still null if a phase threw
+            if (result == null || !result.succeeded())
+                new File(asmFilename).delete();
+        }
+        return result;
+    }
+    
+    private static CompileResult readError(String sourceFile, IOException e)
+    {
+        e.printStackTrace();
+        return CompileResult.failure(sourceFile, CompileResult.Status.READ_ERROR,
+            "Error accessing the source file: \"" + sourceFile + "\"\n");
+    }
+    
+    private static CompileResult compile(String sourceFile, Scanner s, CompileStats stats)
+    {
+        try {
+            return compile(sourceFile, s, stats, null);
+        } catch (IOException e) {
+            // nothing is written without a stream
+            throw new RuntimeException(e);
+        }
+    }
+    
+    // Streams the assembly to out unless it is null.  The optimizer then
+    // runs on each function as it is written, inside the codegen phase.
+    private static CompileResult compile(String sourceFile, Scanner s, CompileStats stats, AssemblyWriter out) throws IOException
+    {
+        stats.begin(CompileStats.Phase.PARSE);
         Parser p = new Parser(s);
         ast.Command syntaxTree = p.parse();
+        stats.end();
+        if (stats.enabled()) {
+            stats.setTokens(s.tokenCount());
+            stats.setNodes(ast.NodeCounter.count(syntaxTree));
+        }
         if (p.hasError()) {
-            System.out.println("Error parsing file " + sourceFile);
-            System.out.println(p.errorReport());
-            System.exit(-3);
+            return CompileResult.failure(sourceFile, CompileResult.Status.PARSE_ERROR,
+                "Error parsing file " + sourceFile + "\n" + p.errorReport() + "\n");
         }
 
+        stats.begin(CompileStats.Phase.TYPE_CHECK);
   		types.TypeChecker tc = new types.TypeChecker();
         tc.check(syntaxTree);
+        stats.end();
         if (tc.hasError()) {
-            System.out.println("Error type-checking file.");
-            System.out.println(tc.errorReport());
-            System.exit(-4);
+            return CompileResult.failure(sourceFile, CompileResult.Status.TYPE_ERROR,
+                "Error type-checking file.\n" + tc.errorReport() + "\n");
         }
 
+        stats.begin(CompileStats.Phase.CODEGEN);
  		CodeGen cg = new CodeGen(tc);
+        if (out != null)
+            cg.getProgram().streamTo(out, PeepholeOptimizer.standard());
         cg.generate(syntaxTree);
+        stats.end();
         if (cg.hasError()) {
-            System.out.println("Error generating code for file " + sourceFile);
-            System.out.println(cg.errorReport());
-            System.exit(-5);
+            return CompileResult.failure(sourceFile, CompileResult.Status.CODEGEN_ERROR,
+                "Error generating code for file " + sourceFile + "\n" + cg.errorReport() + "\n");
         }
         
-        String asmFilename = sourceFile.replace(".crx", ".asm");
+        if (out != null) {
+            cg.getProgram().finishStream();
+            stats.setEliminated(cg.getProgram().eliminatedCount());
+            stats.setInstructions(cg.getProgram().instructionCount());
+            return CompileResult.streamed(sourceFile);
+        }
+        
+        stats.begin(CompileStats.Phase.OPTIMIZE);
+        int eliminated = cg.getProgram().optimize(PeepholeOptimizer.standard());
+        stats.end();
+        stats.setEliminated(eliminated);
+        stats.setInstructions(cg.getProgram().instructionCount());
+        
+        return CompileResult.success(sourceFile, cg.getProgram());
+    }
+    
+    public static void writeAssembly(CompileResult result, String asmFilename) throws IOException
+    {
+        AssemblyWriter out = AssemblyWriter.open(asmFilename);
         try {
-            Program prog = cg.getProgram();
-            File asmFile = new File(asmFilename);
-            PrintStream ps = new PrintStream(asmFile);
-            prog.print(ps);
-            ps.close();
-        } catch (IOException e) {
-            e.printStackTrace();
-            System.err.println("Error writing assembly file: \"" + asmFilename + "\"");
-            System.exit(-6);
-		}	
+            result.write(out);
+        } finally {
+            out.close();
+        }
     }
 }
-    
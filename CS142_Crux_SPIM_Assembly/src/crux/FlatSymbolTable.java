@@ -0,0 +1,100 @@
+package crux;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+// A SymbolTable whose scopes all share a single name -> binding map.
+// Each binding remembers the one it shadows, and each scope keeps an undo
+// log of what it declared, so closeScope() only touches that scope's names
+// and lookup() is one hash probe no matter how deep the nesting is.
+// Only the innermost open scope may be queried or modified.
+public class FlatSymbolTable extends SymbolTable {
+	
+	private static class Binding
+	{
+		final Symbol symbol;
+		final int depth;
+		final Binding shadowed;
+		
+		Binding(Symbol symbol, int depth, Binding shadowed)
+		{
+			this.symbol = symbol;
+			this.depth = depth;
+			this.shadowed = shadowed;
+		}
+	}
+	
+	private HashMap<String, Binding> bindings;
+	private ArrayList<Symbol> declared; // undo log, in declaration order
+	
+	public FlatSymbolTable()
+	{
+		super(null, null);
+		this.bindings = new HashMap<String, Binding>();
+		this.declared = new ArrayList<Symbol>();
+	}
+	
+	private FlatSymbolTable(FlatSymbolTable parent)
+	{
+		super(parent, null);
+		this.bindings = parent.bindings;
+		this.declared = new ArrayList<Symbol>();
+	}
+	
+	@Override
+	public Symbol lookup(String name) throws SymbolNotFoundError
+	{
+		Binding b = bindings.get(name);
+		if (b == null)
+			throw new SymbolNotFoundError(name);
+		return b.symbol;
+	}
+	
+	@Override
+	public Symbol insert(String name) throws RedeclarationError
+	{
+		assert(name != null);
+		assert(name != "");
+		
+		Binding b = bindings.get(name);
+		if (b != null && b.depth == depth())
+			throw new RedeclarationError(b.symbol);
+		Symbol sym = new Symbol(name);
+		bindings.put(name, new Binding(sym, depth(), b));
+		declared.add(sym);
+		return sym;
+	}
+	
+	@Override
+	public SymbolTable newScope()
+	{
+		return new FlatSymbolTable(this);
+	}
+	
+	@Override
+	public SymbolTable closeScope()
+	{
+		for (int i = declared.size() - 1; i >= 0; i--) {
+			String name = declared.get(i).name();
+			Binding b = bindings.get(name);
+			if (b.shadowed == null)
+				bindings.remove(name);
+			else
+				bindings.put(name, b.shadowed);
+		}
+		// declared is kept so error reports can still print this scope
+		return parentTable();
+	}
+	
+	@Override
+	Iterable<Symbol> declaredSymbols()
+	{
+		return declared;
+	}
+	
+	@Override
+	int declaredCount()
+	{
+		return declared.size();
+	}
+}
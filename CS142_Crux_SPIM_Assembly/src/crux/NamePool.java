@@ -0,0 +1,77 @@
+package crux;
+
+// Maps identifier spellings in a source buffer to one canonical String each.
+// Names are run through String.intern() the first time they are seen, so the
+// same object comes back across scanners and matches the string literals the
+// compiler uses for its built-in functions. The String caches its hash, and
+// symbol comparisons can short-circuit on identity.
+public class NamePool {
+	
+	private String[] names;
+	private int[] hashes;
+	private int size;
+	
+	public NamePool()
+	{
+		names = new String[256];
+		hashes = new int[256];
+		size = 0;
+	}
+	
+	public int size()
+	{
+		return size;
+	}
+	
+	public String intern(char[] source, int start, int length)
+	{
+		int h = 0;
+		for (int i = start; i < start + length; i++)
+			h = 31 * h + source[i];
+		
+		int mask = names.length - 1;
+		int slot = h & mask;
+		String name;
+		while ((name = names[slot]) != null) {
+			if (hashes[slot] == h && sameChars(name, source, start, length))
+				return name;
+			slot = (slot + 1) & mask;
+		}
+		
+		name = new String(source, start, length).intern();
+		names[slot] = name;
+		hashes[slot] = h;
+		if (++size * 2 > names.length)
+			grow();
+		return name;
+	}
+	
+	private static boolean sameChars(String name, char[] source, int start, int length)
+	{
+		if (name.length() != length)
+			return false;
+		for (int i = 0; i < length; i++) {
+			if (name.charAt(i) != source[start + i])
+				return false;
+		}
+		return true;
+	}
+	
+	private void grow()
+	{
+		String[] oldNames = names;
+		int[] oldHashes = hashes;
+		names = new String[oldNames.length * 2];
+		hashes = new int[oldNames.length * 2];
+		int mask = names.length - 1;
+		for (int i = 0; i < oldNames.length; i++) {
+			if (oldNames[i] == null)
+				continue;
+			int slot = oldHashes[i] & mask;
+			while (names[slot] != null)
+				slot = (slot + 1) & mask;
+			names[slot] = oldNames[i];
+			hashes[slot] = oldHashes[i];
+		}
+	}
+}
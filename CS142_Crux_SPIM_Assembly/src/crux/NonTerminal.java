@@ -1,5 +1,5 @@
 package crux;
-import java.util.HashSet;
+import java.util.EnumSet;
 import java.util.Set;
 
 public enum NonTerminal {
@@ -8,180 +8,72 @@ public enum NonTerminal {
 	// TODO: mention that we are not doing a first set for every line in the grammar
 	//       some lines have already been handled by the CruxScanner
 	
-    DESIGNATOR(new HashSet<Token.Kind>() {
-        private static final long serialVersionUID = 1L;
-        {
-	        add(Token.Kind.IDENTIFIER);
-	    }}),
-	TYPE(new HashSet<Token.Kind>() {
-        private static final long serialVersionUID = 1L;
-		{
-	        add(Token.Kind.IDENTIFIER);
-	    }}),
-	LITERAL(new HashSet<Token.Kind>() {
-        private static final long serialVersionUID = 1L;
-		{
-			add(Token.Kind.FLOAT);
-			add(Token.Kind.INTEGER);
-			add(Token.Kind.TRUE);
-			add(Token.Kind.FALSE);
-	    }}),
-	CALL_EXPRESSION(new HashSet<Token.Kind>() {
-        private static final long serialVersionUID = 1L;
-		{
-			add(Token.Kind.CALL);
-	    }}),
-	OP0(new HashSet<Token.Kind>() {
-		private static final long serialVersionUID = 1L;
-		{
-			add(Token.Kind.GREATER_EQUAL);
-			add(Token.Kind.LESSER_EQUAL);
-			add(Token.Kind.NOT_EQUAL);
-			add(Token.Kind.EQUAL);
-			add(Token.Kind.GREATER_THAN);
-			add(Token.Kind.LESS_THAN);
-	   }}),
-	OP1(new HashSet<Token.Kind>() {
-		private static final long serialVersionUID = 1L;
-		{
-			add(Token.Kind.ADD);
-			add(Token.Kind.SUB);
-			add(Token.Kind.OR);
-	   }}),
-	OP2(new HashSet<Token.Kind>() {
-		private static final long serialVersionUID = 1L;
-		{
-			add(Token.Kind.MUL);
-			add(Token.Kind.DIV);
-			add(Token.Kind.AND);
-	   }}),
-    EXPRESSION3(new HashSet<Token.Kind>() {
-        private static final long serialVersionUID = 1L;
-		{
-			add(Token.Kind.NOT);
-			add(Token.Kind.OPEN_PAREN);
-			addAll(DESIGNATOR.firstSet);
-			addAll(CALL_EXPRESSION.firstSet);
-			addAll(LITERAL.firstSet);
-	   }}),
-	EXPRESSION2(new HashSet<Token.Kind>() {
-        private static final long serialVersionUID = 1L;
-		{
-			addAll(EXPRESSION3.firstSet);
-	    }}),
-    EXPRESSION1(new HashSet<Token.Kind>() {
-        private static final long serialVersionUID = 1L;
-		{
-			addAll(EXPRESSION2.firstSet);
-	    }}),
-    EXPRESSION0(new HashSet<Token.Kind>() {
-        private static final long serialVersionUID = 1L;
-		{
-			addAll(EXPRESSION1.firstSet);
-	    }}),
-	EXPRESSION_LIST(new HashSet<Token.Kind>() {
-        private static final long serialVersionUID = 1L;
-		{
-			addAll(EXPRESSION0.firstSet);
-	    }}),
-	PARAMETER(new HashSet<Token.Kind>() {
-        private static final long serialVersionUID = 1L;
-		{
-	        add(Token.Kind.IDENTIFIER);
-	    }}),
-	PARAMETER_LIST(new HashSet<Token.Kind>() {
-        private static final long serialVersionUID = 1L;
-		{
-			addAll(PARAMETER.firstSet);
-	    }}),
-	VARIABLE_DECLARATION(new HashSet<Token.Kind>() {
-        private static final long serialVersionUID = 1L;
-		{
-			add(Token.Kind.VAR);
-	    }}),
-	ARRAY_DECLARATION(new HashSet<Token.Kind>() {
-        private static final long serialVersionUID = 1L;
-		{
-			add(Token.Kind.ARRAY);
-	    }}),
-	FUNCTION_DECLARATION(new HashSet<Token.Kind>() {
-        private static final long serialVersionUID = 1L;
-		{
-			add(Token.Kind.FUNC);
-	    }}),
-	DECLARATION(new HashSet<Token.Kind>() {
-        private static final long serialVersionUID = 1L;
-		{
-			addAll(VARIABLE_DECLARATION.firstSet);
-			addAll(ARRAY_DECLARATION.firstSet);
-			addAll(FUNCTION_DECLARATION.firstSet);
-	    }}),
-	DECLARATION_LIST(new HashSet<Token.Kind>() {
-        private static final long serialVersionUID = 1L;
-		{
-			addAll(DECLARATION.firstSet);
-		}}),	
-	ASSIGNMENT_STATEMENT(new HashSet<Token.Kind>() {
-        private static final long serialVersionUID = 1L;
-		{
-			add(Token.Kind.LET);
-	    }}),
-	CALL_STATEMENT(new HashSet<Token.Kind>() {
-        private static final long serialVersionUID = 1L;
-		{
-			add(Token.Kind.CALL);
-	    }}),
-	IF_STATEMENT(new HashSet<Token.Kind>() {
-        private static final long serialVersionUID = 1L;
-		{
-			add(Token.Kind.IF);
-	    }}),
-	WHILE_STATEMENT(new HashSet<Token.Kind>() {
-        private static final long serialVersionUID = 1L;
-		{
-			add(Token.Kind.WHILE);
-	    }}),
-	RETURN_STATEMENT(new HashSet<Token.Kind>() {
-        private static final long serialVersionUID = 1L;
-		{
-			add(Token.Kind.RETURN);
-	    }}),
-	STATEMENT_BLOCK(new HashSet<Token.Kind>() {
-        private static final long serialVersionUID = 1L;
-		{
-			add(Token.Kind.OPEN_BRACE);
-	    }}),
-	STATEMENT(new HashSet<Token.Kind>() {
-        private static final long serialVersionUID = 1L;
-		{
-			addAll(VARIABLE_DECLARATION.firstSet);
-			addAll(ARRAY_DECLARATION.firstSet);
-			addAll(CALL_STATEMENT.firstSet);
-			addAll(ASSIGNMENT_STATEMENT.firstSet);
-			addAll(IF_STATEMENT.firstSet);
-			addAll(WHILE_STATEMENT.firstSet);
-			addAll(RETURN_STATEMENT.firstSet);
-	    }}),
-	STATEMENT_LIST(new HashSet<Token.Kind>() {
-        private static final long serialVersionUID = 1L;
-		{
-			addAll(STATEMENT.firstSet);
-	    }}),
-	PROGRAM(new HashSet<Token.Kind>() {
-        private static final long serialVersionUID = 1L;
-		{
-			addAll(DECLARATION_LIST.firstSet);
-	    }});
-           
-    public final HashSet<Token.Kind> firstSet = new HashSet<Token.Kind>();
+	// Each rule lists the terminals that can start it, followed by the
+	// (earlier) nonterminals whose FIRST sets it includes.
+	
+	DESIGNATOR(terminals(Token.Kind.IDENTIFIER)),
+	TYPE(terminals(Token.Kind.IDENTIFIER)),
+	LITERAL(terminals(Token.Kind.FLOAT, Token.Kind.INTEGER, Token.Kind.TRUE, Token.Kind.FALSE)),
+	CALL_EXPRESSION(terminals(Token.Kind.CALL)),
+	OP0(terminals(Token.Kind.GREATER_EQUAL, Token.Kind.LESSER_EQUAL, Token.Kind.NOT_EQUAL,
+	              Token.Kind.EQUAL, Token.Kind.GREATER_THAN, Token.Kind.LESS_THAN)),
+	OP1(terminals(Token.Kind.ADD, Token.Kind.SUB, Token.Kind.OR)),
+	OP2(terminals(Token.Kind.MUL, Token.Kind.DIV, Token.Kind.AND)),
+	EXPRESSION3(terminals(Token.Kind.NOT, Token.Kind.OPEN_PAREN),
+	            DESIGNATOR, CALL_EXPRESSION, LITERAL),
+	EXPRESSION2(terminals(), EXPRESSION3),
+	EXPRESSION1(terminals(), EXPRESSION2),
+	EXPRESSION0(terminals(), EXPRESSION1),
+	EXPRESSION_LIST(terminals(), EXPRESSION0),
+	PARAMETER(terminals(Token.Kind.IDENTIFIER)),
+	PARAMETER_LIST(terminals(), PARAMETER),
+	VARIABLE_DECLARATION(terminals(Token.Kind.VAR)),
+	ARRAY_DECLARATION(terminals(Token.Kind.ARRAY)),
+	FUNCTION_DECLARATION(terminals(Token.Kind.FUNC)),
+	DECLARATION(terminals(), VARIABLE_DECLARATION, ARRAY_DECLARATION, FUNCTION_DECLARATION),
+	DECLARATION_LIST(terminals(), DECLARATION),
+	ASSIGNMENT_STATEMENT(terminals(Token.Kind.LET)),
+	CALL_STATEMENT(terminals(Token.Kind.CALL)),
+	IF_STATEMENT(terminals(Token.Kind.IF)),
+	WHILE_STATEMENT(terminals(Token.Kind.WHILE)),
+	RETURN_STATEMENT(terminals(Token.Kind.RETURN)),
+	STATEMENT_BLOCK(terminals(Token.Kind.OPEN_BRACE)),
+	STATEMENT(terminals(), VARIABLE_DECLARATION, ARRAY_DECLARATION, CALL_STATEMENT,
+	          ASSIGNMENT_STATEMENT, IF_STATEMENT, WHILE_STATEMENT, RETURN_STATEMENT),
+	STATEMENT_LIST(terminals(), STATEMENT),
+	PROGRAM(terminals(), DECLARATION_LIST);
+	
+	public final EnumSet<Token.Kind> firstSet = EnumSet.noneOf(Token.Kind.class);
+	
+	// bit k is set when the Token.Kind with ordinal k is in the FIRST set
+	private final long firstMask;
 
-	NonTerminal(HashSet<Token.Kind> t)
-    {
-        firstSet.addAll(t);
-    }
+	NonTerminal(Token.Kind[] terminals, NonTerminal... includes)
+	{
+		for (Token.Kind k : terminals)
+			firstSet.add(k);
+		for (NonTerminal nt : includes)
+			firstSet.addAll(nt.firstSet);
+		
+		long mask = 0;
+		for (Token.Kind k : firstSet)
+			mask |= 1L << k.ordinal();
+		firstMask = mask;
+	}
+	
+	private static Token.Kind[] terminals(Token.Kind... kinds)
+	{
+		assert(Token.Kind.values().length <= Long.SIZE);
+		return kinds;
+	}
 	
 	public final Set<Token.Kind> firstSet()
 	{
 		return firstSet;
 	}
+	
+	public final boolean firstSetContains(Token.Kind kind)
+	{
+		return (firstMask & (1L << kind.ordinal())) != 0;
+	}
 }
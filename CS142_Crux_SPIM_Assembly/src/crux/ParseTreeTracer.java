@@ -0,0 +1,37 @@
+package crux;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+// Writes one indented line per grammar rule straight to a sink, in the
+// same layout Parser.parseTreeReport() has always produced.
+public class ParseTreeTracer implements RuleListener {
+	
+	private Appendable sink;
+	private int depth;
+	
+	public ParseTreeTracer(Appendable sink)
+	{
+		this.sink = sink;
+		this.depth = 0;
+	}
+	
+	@Override
+	public void enterRule(NonTerminal nonTerminal)
+	{
+		try {
+			for (int i = 0; i < depth; i++)
+				sink.append("  ");
+			sink.append(nonTerminal.name()).append('\n');
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		depth++;
+	}
+	
+	@Override
+	public void exitRule(NonTerminal nonTerminal)
+	{
+		depth--;
+	}
+}
@@ -1,6 +1,7 @@
 package crux;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Stack;
 
@@ -12,56 +13,102 @@ public class Parser {
     public static String uciNetID = "TODO: uci-net id";
     
 // Grammar Rule Reporting ==========================================
-    private int parseTreeRecursionDepth = 0;
-    private StringBuffer parseTreeBuffer = new StringBuffer();
+    private RuleListener ruleListener = null; // tracing is off unless asked for
+    private StringBuilder parseTreeBuffer = null;
+
+    public void setRuleListener(RuleListener listener)
+    {
+        this.ruleListener = listener;
+    }
+    
+    // Records the parse tree so parseTreeReport() can return it
+    public void enableParseTreeReport()
+    {
+        parseTreeBuffer = new StringBuilder();
+        ruleListener = new ParseTreeTracer(parseTreeBuffer);
+    }
 
     public void enterRule(NonTerminal nonTerminal) {
-        String lineData = new String();
-        for(int i = 0; i < parseTreeRecursionDepth; i++)
-        {
-            lineData += "  ";
-        }
-        lineData += nonTerminal.name();
-        //System.out.println("descending " + lineData);
-        parseTreeBuffer.append(lineData + "\n");
-        parseTreeRecursionDepth++;
+        if (ruleListener != null)
+            ruleListener.enterRule(nonTerminal);
     }
     
     private void exitRule(NonTerminal nonTerminal)
     {
-        parseTreeRecursionDepth--;
+        if (ruleListener != null)
+            ruleListener.exitRule(nonTerminal);
     }
     
     public String parseTreeReport()
     {
-        return parseTreeBuffer.toString();
+        return parseTreeBuffer == null ? "" : parseTreeBuffer.toString();
     }
 
 // Error Reporting ==========================================
-    private StringBuffer errorBuffer = new StringBuffer();
+    private ArrayList<ParseError> errors = new ArrayList<ParseError>();
+    private int maxReportedScopes = Integer.MAX_VALUE;
+    
+    // An error message, plus the symbol table as it stood when the error
+    // was found. The table is only turned into text by errorReport().
+    private static class ParseError
+    {
+        private String message;
+        private SymbolTable scope;
+        private int[] scopeSizes;
+        
+        ParseError(String message)
+        {
+            this.message = message;
+        }
+        
+        ParseError(String message, SymbolTable scope)
+        {
+            this.message = message;
+            this.scope = scope;
+            this.scopeSizes = scope.scopeSizes();
+        }
+        
+        void appendTo(StringBuilder sb, int maxScopes)
+        {
+            sb.append(message).append('\n');
+            if (scope != null) {
+                scope.appendTo(sb, scopeSizes, maxScopes);
+                sb.append('\n');
+            }
+        }
+    }
     
     private String reportSyntaxError(NonTerminal nt)
     {
         String message = "SyntaxError(" + lineNumber() + "," + charPosition() + ")[Expected a token from " + nt.name() + " but got " + currentToken.kind() + ".]";
-        errorBuffer.append(message + "\n");
+        errors.add(new ParseError(message));
         return message;
         }
      
     private String reportSyntaxError(Token.Kind kind)
     {
         String message = "SyntaxError(" + lineNumber() + "," + charPosition() + ")[Expected " + kind + " but got " + currentToken.kind() + ".]";
-        errorBuffer.append(message + "\n");
+        errors.add(new ParseError(message));
         return message;
     }
     
+    // Limits how many of the innermost scopes each symbol error dumps
+    public void setMaxReportedScopes(int maxScopes)
+    {
+        this.maxReportedScopes = maxScopes;
+    }
+    
     public String errorReport()
     {
-        return errorBuffer.toString();
+        StringBuilder sb = new StringBuilder();
+        for (ParseError e : errors)
+            e.appendTo(sb, maxReportedScopes);
+        return sb.toString();
     }
     
     public boolean hasError()
     {
-        return errorBuffer.length() != 0;
+        return !errors.isEmpty();
     }
     
     private class QuitParseException extends RuntimeException
@@ -87,40 +134,34 @@ public class Parser {
     
     private void initSymbolTable()
     {
-        symbolTable = new SymbolTable();
+        symbolTable = globalScope;
         Symbol s = symbolTable.insert("readInt");
-        s.setType(new FuncType(new TypeList(), new IntType()));
+        s.setType(FuncType.of(TypeList.of(), Type.INT));
         
         s = symbolTable.insert("readFloat");
-        s.setType(new FuncType(new TypeList(), new FloatType()));
+        s.setType(FuncType.of(TypeList.of(), Type.FLOAT));
         
         s = symbolTable.insert("printBool");
-        TypeList args = new TypeList();
-        args.append(new BoolType());
-        s.setType(new FuncType(args, new VoidType()));
+        s.setType(FuncType.of(TypeList.of(Type.BOOL), Type.VOID));
         
         s = symbolTable.insert("printInt");
-        args = new TypeList();
-        args.append(new IntType());
-        s.setType(new FuncType(args, new VoidType()));
+        s.setType(FuncType.of(TypeList.of(Type.INT), Type.VOID));
         
         s = symbolTable.insert("printFloat");
-        args = new TypeList();
-        args.append(new FloatType());
-        s.setType(new FuncType(args, new VoidType()));
+        s.setType(FuncType.of(TypeList.of(Type.FLOAT), Type.VOID));
         
         s = symbolTable.insert("println");
-        s.setType(new FuncType(new TypeList(), new VoidType()));
+        s.setType(FuncType.of(TypeList.of(), Type.VOID));
     }
     
     private void enterScope()
     {
-        symbolTable = new SymbolTable(symbolTable);
+        symbolTable = symbolTable.newScope();
     }
     
     private void exitScope()
     {
-        symbolTable = symbolTable.parentTable();
+        symbolTable = symbolTable.closeScope();
     }
 
     private Symbol tryResolveSymbol(String name)
@@ -136,8 +177,7 @@ public class Parser {
     private String reportResolveSymbolError(String name)
     {
         String message = "ResolveSymbolError(" + lineNumber() + "," + charPosition() + ")[Could not find " + name + ".]";
-        errorBuffer.append(message + "\n");
-        errorBuffer.append(symbolTable.toString() + "\n");
+        errors.add(new ParseError(message, symbolTable));
         return message;
     }
 
@@ -154,8 +194,7 @@ public class Parser {
     private String reportDeclareSymbolError(String name)
     {
         String message = "DeclareSymbolError(" + lineNumber() + "," + charPosition() + ")[" + name + " already exists.]";
-        errorBuffer.append(message + "\n");
-        errorBuffer.append(symbolTable.toString() + "\n");
+        errors.add(new ParseError(message, symbolTable));
         return message;
     }    
     
@@ -167,13 +206,21 @@ public class Parser {
     }
         
 // Parser ==========================================
-    private Scanner scanner;
-    private Token currentToken;
+    private TokenStream tokens;
+    private Token currentToken; // tokens.current(), a recycled slot
+    private SymbolTable globalScope;
     
     public Parser(Scanner scanner)
     {
-        this.scanner = scanner;
-        this.currentToken = scanner.next();
+        this(scanner, new SymbolTable());
+    }
+    
+    // globalScope must be an empty root table, e.g. a FlatSymbolTable
+    public Parser(Scanner scanner, SymbolTable globalScope)
+    {
+        this.tokens = new TokenStream(scanner);
+        this.globalScope = globalScope;
+        this.currentToken = tokens.current();
     }
     
     public ast.Command parse()
@@ -194,7 +241,7 @@ public class Parser {
     
     private boolean have(NonTerminal nt)
     {
-        return nt.firstSet().contains(currentToken.kind());
+        return nt.firstSetContains(currentToken.kind());
     }
 
     /*
@@ -217,7 +264,8 @@ public class Parser {
     private boolean accept(Token.Kind kind)
     {
         if (have(kind)) {
-            currentToken = scanner.next();
+            tokens.advance();
+            currentToken = tokens.current();
             return true;
         }
         return false;
@@ -226,15 +274,17 @@ public class Parser {
     private boolean accept(NonTerminal nt)
     {
         if (have(nt)) {
-            currentToken = scanner.next();
+            tokens.advance();
+            currentToken = tokens.current();
             return true;
         }
         return false;
     }
     
+    // The returned token is a copy, the current one's slot gets reused
     private Token expectRetrieve(Token.Kind kind)
     {
-        Token tok = currentToken;
+        Token tok = currentToken.copy();
         if (accept(kind))
             return tok;
         String errorMessage = reportSyntaxError(kind);
@@ -244,7 +294,7 @@ public class Parser {
         
     private Token expectRetrieve(NonTerminal nt)
     {
-        Token tok = currentToken;
+        Token tok = currentToken.copy();
         if (accept(nt))
             return tok;
         String errorMessage = reportSyntaxError(nt);
@@ -286,6 +336,77 @@ public class Parser {
         return null;
     }
     
+// Expression Operators ==============================================
+    // Binding strength of each binary operator by Token.Kind ordinal, 0 if
+    // the kind is not one. Comparisons (op0) do not chain: at most one per
+    // expression0, as in the grammar. op1 and op2 are left associative.
+    private static final int COMPARISON = 1;
+    private static final int[] precedence = new int[Token.Kind.values().length];
+    
+    static {
+        for (Token.Kind k : NonTerminal.OP0.firstSet())
+            precedence[k.ordinal()] = COMPARISON;
+        for (Token.Kind k : NonTerminal.OP1.firstSet())
+            precedence[k.ordinal()] = 2;
+        for (Token.Kind k : NonTerminal.OP2.firstSet())
+            precedence[k.ordinal()] = 3;
+    }
+    
+    private static final Token.Kind[] kinds = Token.Kind.values();
+    
+    // Shared by nested binaryExpression() calls, each works above its own base.
+    // Operators are kept as (kind ordinal, line, char) triples because the
+    // token slots they came from are recycled by the TokenStream.
+    private ArrayList<ast.Expression> operands = new ArrayList<ast.Expression>();
+    private int[] operators = new int[3 * 16];
+    private int operatorTop = 0;
+    
+    // Parses expression0 by operator precedence with explicit operand and
+    // operator stacks, so a long chain of terms costs no extra call depth.
+    private ast.Expression binaryExpression()
+    {
+        int operandBase = operands.size();
+        int operatorBase = operatorTop;
+        boolean compared = false;
+        
+        operands.add(expression3());
+        while (true) {
+            int prec = precedence[currentToken.kind().ordinal()];
+            if (prec == 0 || (prec == COMPARISON && compared))
+                break;
+            while (operatorTop > operatorBase && precedence[operators[operatorTop - 3]] >= prec)
+                reduce();
+            if (prec == COMPARISON)
+                compared = true;
+            
+            pushOperator(currentToken);
+            accept(currentToken.kind());
+            operands.add(expression3());
+        }
+        
+        while (operatorTop > operatorBase)
+            reduce();
+        return operands.remove(operandBase);
+    }
+    
+    private void pushOperator(Token op)
+    {
+        if (operatorTop == operators.length)
+            operators = Arrays.copyOf(operators, 2 * operators.length);
+        operators[operatorTop++] = op.kind().ordinal();
+        operators[operatorTop++] = op.lineNumber();
+        operators[operatorTop++] = op.charPosition();
+    }
+    
+    private void reduce()
+    {
+        operatorTop -= 3;
+        ast.Expression rightSide = operands.remove(operands.size() - 1);
+        ast.Expression leftSide = operands.remove(operands.size() - 1);
+        operands.add(ast.Command.newExpression(leftSide, kinds[operators[operatorTop]],
+            operators[operatorTop + 1], operators[operatorTop + 2], rightSide));
+    }
+    
 // Grammar Rules =====================================================
     
     // literal := INTEGER | FLOAT | TRUE | FALSE .
@@ -356,6 +477,11 @@ public class Parser {
     // expression0 := expression1 [ op0 expression1 ] .
     public ast.Expression expression0()
     {
+        // the operator table builds the same tree without a call per level,
+        // tracing keeps the rule-per-method descent so the trace is complete
+        if (ruleListener == null)
+            return binaryExpression();
+        
         enterRule(NonTerminal.EXPRESSION0);
         ast.Expression leftSide = expression1();
         if (have(NonTerminal.OP0)) { 
@@ -425,8 +551,10 @@ public class Parser {
         ast.Expression expr = null;
         
         if (have(Token.Kind.NOT)) {
-            Token tok = expectRetrieve(Token.Kind.NOT);
-            expr = new ast.LogicalNot(tok.lineNumber(), tok.charPosition(), expression3());
+            int lineNum = lineNumber();
+            int charPos = charPosition();
+            expect(Token.Kind.NOT);
+            expr = new ast.LogicalNot(lineNum, charPos, expression3());
         } else if (accept(Token.Kind.OPEN_PAREN)) {
             expr = expression0();
             expect(Token.Kind.CLOSE_PAREN);
@@ -546,7 +674,7 @@ public class Parser {
         
         // arrays require reversing the description
         while (!indexes.empty())
-            sym.setType(new ArrayType(indexes.pop(), sym.type()));
+            sym.setType(ArrayType.of(indexes.pop(), sym.type()));
         
         exitRule(NonTerminal.ARRAY_DECLARATION);
         return new ast.ArrayDeclaration(lineNum, charPos, sym);
@@ -567,11 +695,11 @@ public class Parser {
         expect(Token.Kind.CLOSE_PAREN);
         expect(Token.Kind.COLON);
         Type retType = type();
-        TypeList paramTypes = new TypeList();
+        List<Type> paramTypes = new ArrayList<Type>(params.size());
         for (Symbol s : params) {
-            paramTypes.append(s.type());
+            paramTypes.add(s.type());
         }
-        sym.setType(new FuncType(paramTypes, retType));
+        sym.setType(FuncType.of(TypeList.of(paramTypes), retType));
         
         ast.StatementList body = statement_block();
         exitScope();
@@ -618,13 +746,15 @@ public class Parser {
     public ast.Assignment assignment_statement()
     {
         enterRule(NonTerminal.ASSIGNMENT_STATEMENT);
-        Token let = expectRetrieve(Token.Kind.LET);
+        int lineNum = lineNumber();
+        int charPos = charPosition();
+        expect(Token.Kind.LET);
         ast.Expression dest = designator();
         expect(Token.Kind.ASSIGN);
         ast.Expression source = expression0();
         expect(Token.Kind.SEMICOLON);
         exitRule(NonTerminal.ASSIGNMENT_STATEMENT);
-        return new ast.Assignment(let.lineNumber(), let.charPosition(), dest, source);
+        return new ast.Assignment(lineNum, charPos, dest, source);
     }
         
     // call-statement := call-expression ";"
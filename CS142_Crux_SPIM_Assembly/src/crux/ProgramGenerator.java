@@ -0,0 +1,517 @@
+package crux;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/*
+ * Generates random Crux programs that parse and type check, for benchmarks
+ * and soak tests.  The same seed and shape always give the same program.
+ * With --mutations the program is corrupted afterwards, to drive the
+ * Parser and TypeChecker down their error paths.
+ *
+ * usage: ProgramGenerator [--seed n] [--functions n] [--statements n]
+ *            [--depth n] [--expression-depth n] [--params n] [--globals n]
+ *            [--arrays n] [--dimensions n] [--extent n] [--mutations n]
+ *            [--count n] [-o file|directory]
+ */
+public class ProgramGenerator {
+
+    // Knobs for the size and shape of a generated program
+    public static class Shape
+    {
+        public int functions = 10;       // not counting main
+        public int statements = 10;      // per statement block
+        public int depth = 2;            // how deep if and while may nest
+        public int expressionDepth = 3;  // height of the expression trees
+        public int params = 3;           // most parameters a function takes
+        public int globals = 4;          // global variables
+        public int arrays = 2;           // global arrays
+        public int dimensions = 2;       // most dimensions an array has
+        public int extent = 8;           // largest extent of one dimension
+        public int mutations = 0;        // random edits made after generation
+    }
+
+    private enum Scalar {
+        INT("int"), FLOAT("float"), BOOL("bool"), VOID("void");
+
+        final String name;
+
+        Scalar(String name)
+        {
+            this.name = name;
+        }
+    }
+
+    private static final Scalar[] SCALARS = { Scalar.INT, Scalar.FLOAT, Scalar.BOOL };
+
+    // A variable, parameter or array the generated code may use
+    private static class Var
+    {
+        final String name;
+        final Scalar kind;
+        final int[] extents;     // null for scalars
+        final boolean writable;  // loop counters are only read
+
+        Var(String name, Scalar kind, int[] extents, boolean writable)
+        {
+            this.name = name;
+            this.kind = kind;
+            this.extents = extents;
+            this.writable = writable;
+        }
+    }
+
+    private static class Func
+    {
+        final String name;
+        final Scalar[] params;
+        final Scalar ret;
+
+        Func(String name, Scalar[] params, Scalar ret)
+        {
+            this.name = name;
+            this.params = params;
+            this.ret = ret;
+        }
+    }
+
+    // Expression precedence as the Parser sees it, higher binds tighter
+    private static final int COMPARISON = 1;
+    private static final int OP1 = 2;
+    private static final int OP2 = 3;
+    private static final int ATOM = 4;
+
+    private final Shape shape;
+    private final Random random;
+    private final StringBuilder out = new StringBuilder();
+    private final List<Var> globals = new ArrayList<Var>();
+    private final List<Func> functions = new ArrayList<Func>();
+    private List<Var> locals;
+    private int nextName;
+
+    private ProgramGenerator(long seed, Shape shape)
+    {
+        this.shape = shape;
+        this.random = new Random(seed);
+    }
+
+    public static String generate(long seed, Shape shape)
+    {
+        ProgramGenerator gen = new ProgramGenerator(seed, shape);
+        gen.program();
+        String source = gen.out.toString();
+        if (shape.mutations > 0)
+            source = mutate(source, gen.random, shape.mutations);
+        return source;
+    }
+
+    private String freshName(String prefix)
+    {
+        return prefix + nextName++;
+    }
+
+    private Scalar randomScalar()
+    {
+        return SCALARS[random.nextInt(SCALARS.length)];
+    }
+
+    private void program()
+    {
+        for (int i = 0; i < shape.globals; i++) {
+            Var v = new Var(freshName("g"), randomScalar(), null, true);
+            globals.add(v);
+            out.append("var ").append(v.name).append(" : ").append(v.kind.name).append(";\n");
+        }
+        for (int i = 0; i < shape.arrays; i++) {
+            int[] extents = new int[1 + random.nextInt(Math.max(1, shape.dimensions))];
+            for (int d = 0; d < extents.length; d++)
+                extents[d] = 1 + random.nextInt(Math.max(1, shape.extent));
+            Var v = new Var(freshName("a"), randomScalar(), extents, true);
+            globals.add(v);
+            out.append("array ").append(v.name).append(" : ").append(v.kind.name);
+            for (int extent : extents)
+                out.append('[').append(extent).append(']');
+            out.append(";\n");
+        }
+
+        for (int i = 0; i < shape.functions; i++) {
+            Scalar[] params = new Scalar[random.nextInt(shape.params + 1)];
+            for (int p = 0; p < params.length; p++)
+                params[p] = randomScalar();
+            Scalar ret = random.nextInt(4) == 0 ? Scalar.VOID : randomScalar();
+            function(new Func(freshName("f"), params, ret));
+        }
+        function(new Func("main", new Scalar[0], Scalar.VOID));
+    }
+
+    // Functions only call the ones defined before them, so nothing recurses
+    private void function(Func f)
+    {
+        locals = new ArrayList<Var>();
+        out.append("func ").append(f.name).append("(");
+        for (int p = 0; p < f.params.length; p++) {
+            Var v = new Var(freshName("p"), f.params[p], null, true);
+            locals.add(v);
+            out.append(p == 0 ? "" : ", ").append(v.name).append(" : ").append(v.kind.name);
+        }
+        out.append(") : ").append(f.ret.name).append(" {\n");
+
+        int mark = locals.size();
+        statements(shape.depth, 1);
+        if (f.ret != Scalar.VOID) {
+            indent(1);
+            out.append("return ");
+            expression(f.ret, shape.expressionDepth, 0);
+            out.append(";\n");
+        }
+        popLocals(mark);
+        out.append("}\n");
+        functions.add(f);
+    }
+
+    private void statements(int depth, int indent)
+    {
+        int count = Math.max(1, shape.statements);
+        for (int i = 0; i < count; i++)
+            statement(depth, indent);
+    }
+
+    private void block(int depth, int indent)
+    {
+        int mark = locals.size();
+        out.append("{\n");
+        statements(depth, indent);
+        indent(indent - 1);
+        out.append("}");
+        popLocals(mark);
+    }
+
+    private void popLocals(int mark)
+    {
+        while (locals.size() > mark)
+            locals.remove(locals.size() - 1);
+    }
+
+    private void statement(int depth, int indent)
+    {
+        indent(indent);
+        int choice = random.nextInt(depth > 0 ? 6 : 4);
+        switch (choice) {
+        case 0: {
+            Var v = new Var(freshName("v"), randomScalar(), null, true);
+            out.append("var ").append(v.name).append(" : ").append(v.kind.name).append(";\n");
+            locals.add(v);
+            break;
+        }
+        case 1:
+        case 2:
+            if (!assignment())
+                callStatement(); // nothing to assign to yet
+            break;
+        case 3:
+            callStatement();
+            break;
+        case 4:
+            out.append("if ");
+            expression(Scalar.BOOL, shape.expressionDepth, 0);
+            out.append(" ");
+            block(depth - 1, indent + 1);
+            if (random.nextBoolean()) {
+                out.append(" else ");
+                block(depth - 1, indent + 1);
+            }
+            out.append("\n");
+            break;
+        default:
+            loop(depth, indent);
+            break;
+        }
+    }
+
+    // Loops count up to a small bound so a generated program always halts
+    private void loop(int depth, int indent)
+    {
+        Var counter = new Var(freshName("i"), Scalar.INT, null, false);
+        out.append("var ").append(counter.name).append(" : int;\n");
+        indent(indent);
+        out.append("let ").append(counter.name).append(" = 0;\n");
+        indent(indent);
+        out.append("while ").append(counter.name).append(" < ").append(1 + random.nextInt(4)).append(" ");
+
+        int mark = locals.size();
+        out.append("{\n");
+        statements(depth - 1, indent + 1);
+        indent(indent + 1);
+        out.append("let ").append(counter.name).append(" = ").append(counter.name).append(" + 1;\n");
+        indent(indent);
+        out.append("}\n");
+        popLocals(mark);
+        locals.add(counter);
+    }
+
+    private boolean assignment()
+    {
+        Var v = pick(null, true);
+        if (v == null)
+            return false;
+        out.append("let ");
+        designator(v);
+        out.append(" = ");
+        expression(v.kind, shape.expressionDepth, 0);
+        out.append(";\n");
+        return true;
+    }
+
+    private void callStatement()
+    {
+        Func f = functions.isEmpty() || random.nextInt(3) == 0 ? null : functions.get(random.nextInt(functions.size()));
+        if (f == null) {
+            Scalar k = randomScalar();
+            out.append("::print").append(k == Scalar.INT ? "Int" : k == Scalar.FLOAT ? "Float" : "Bool").append("(");
+            expression(k, shape.expressionDepth, 0);
+            out.append(");\n");
+        } else {
+            call(f, shape.expressionDepth);
+            out.append(";\n");
+        }
+    }
+
+    private void call(Func f, int depth)
+    {
+        out.append("::").append(f.name).append("(");
+        for (int p = 0; p < f.params.length; p++) {
+            out.append(p == 0 ? "" : ", ");
+            expression(f.params[p], depth - 1, 0);
+        }
+        out.append(")");
+    }
+
+    // A random visible variable of the given kind (any kind if null), or null
+    private Var pick(Scalar kind, boolean writable)
+    {
+        int total = globals.size() + locals.size();
+        if (total == 0)
+            return null;
+        int start = random.nextInt(total);
+        for (int i = 0; i < total; i++) {
+            int n = (start + i) % total;
+            Var v = n < globals.size() ? globals.get(n) : locals.get(n - globals.size());
+            if ((kind == null || v.kind == kind) && (!writable || v.writable))
+                return v;
+        }
+        return null;
+    }
+
+    private Func pickFunction(Scalar ret)
+    {
+        if (functions.isEmpty())
+            return null;
+        int start = random.nextInt(functions.size());
+        for (int i = 0; i < functions.size(); i++) {
+            Func f = functions.get((start + i) % functions.size());
+            if (f.ret == ret)
+                return f;
+        }
+        return null;
+    }
+
+    // Array indexes stay in bounds so the program can also be run
+    private void designator(Var v)
+    {
+        out.append(v.name);
+        if (v.extents != null) {
+            for (int extent : v.extents)
+                out.append('[').append(random.nextInt(extent)).append(']');
+        }
+    }
+
+    // Writes an expression of the given kind.  Anything that binds looser
+    // than minLevel is parenthesized, so the Parser builds the same tree.
+    private void expression(Scalar kind, int depth, int minLevel)
+    {
+        if (depth <= 0 || random.nextInt(4) == 0) {
+            leaf(kind, depth);
+            return;
+        }
+
+        int level;
+        if (kind == Scalar.BOOL) {
+            int choice = random.nextInt(4);
+            level = choice == 0 ? OP1 : choice == 1 ? OP2 : choice == 2 ? COMPARISON : ATOM;
+        } else {
+            level = random.nextBoolean() ? OP1 : OP2;
+        }
+
+        boolean paren = level < minLevel;
+        if (paren)
+            out.append("(");
+
+        if (level == ATOM) {
+            out.append("not ");
+            expression(Scalar.BOOL, depth - 1, ATOM);
+        } else if (level == COMPARISON) {
+            Scalar operand = random.nextBoolean() ? Scalar.INT : Scalar.FLOAT;
+            String[] ops = { ">=", "<=", "!=", "==", ">", "<" };
+            expression(operand, depth - 1, OP1);
+            out.append(" ").append(ops[random.nextInt(ops.length)]).append(" ");
+            expression(operand, depth - 1, OP1);
+        } else {
+            String op;
+            if (kind == Scalar.BOOL)
+                op = level == OP1 ? "or" : "and";
+            else if (level == OP1)
+                op = random.nextBoolean() ? "+" : "-";
+            else
+                op = random.nextBoolean() ? "*" : "/";
+            expression(kind, depth - 1, level);
+            out.append(" ").append(op).append(" ");
+            expression(kind, depth - 1, level + 1);
+        }
+
+        if (paren)
+            out.append(")");
+    }
+
+    private void leaf(Scalar kind, int depth)
+    {
+        int choice = random.nextInt(3);
+        if (choice == 0) {
+            Var v = pick(kind, false);
+            if (v != null) {
+                designator(v);
+                return;
+            }
+        } else if (choice == 1 && depth > 0) {
+            Func f = pickFunction(kind);
+            if (f != null) {
+                call(f, Math.min(depth, 1));
+                return;
+            }
+        }
+
+        // literals are never zero, so divisions stay defined
+        switch (kind) {
+        case INT:
+            out.append(1 + random.nextInt(1000));
+            break;
+        case FLOAT:
+            out.append(1 + random.nextInt(100)).append('.').append(random.nextInt(100));
+            break;
+        default:
+            out.append(random.nextBoolean() ? "true" : "false");
+            break;
+        }
+    }
+
+    private void indent(int level)
+    {
+        for (int i = 0; i < level; i++)
+            out.append("  ");
+    }
+
+    private static final String[] NOISE = {
+        ";", "(", ")", "{", "}", "[", "]", "::", "=", "let", "var", "func", "return", "1.5", "7", "undeclared", "@"
+    };
+
+    // Deletes, duplicates or inserts short pieces of source at random points
+    static String mutate(String source, Random random, int count)
+    {
+        StringBuilder sb = new StringBuilder(source);
+        for (int i = 0; i < count && sb.length() > 0; i++) {
+            int at = random.nextInt(sb.length());
+            int len = Math.min(1 + random.nextInt(8), sb.length() - at);
+            switch (random.nextInt(3)) {
+            case 0:
+                sb.delete(at, at + len);
+                break;
+            case 1:
+                sb.insert(at, sb.substring(at, at + len));
+                break;
+            default:
+                sb.insert(at, " " + NOISE[random.nextInt(NOISE.length)] + " ");
+                break;
+            }
+        }
+        return sb.toString();
+    }
+
+    public static void main(String[] args)
+    {
+        Shape shape = new Shape();
+        long seed = 0;
+        int count = 1;
+        String output = null;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.equals("-o") && i + 1 < args.length)
+                    output = args[++i];
+                else if (i + 1 >= args.length)
+                    throw new IllegalArgumentException("Missing value for " + arg);
+                else if (arg.equals("--seed"))
+                    seed = Long.parseLong(args[++i]);
+                else if (arg.equals("--count"))
+                    count = Integer.parseInt(args[++i]);
+                else if (arg.equals("--functions"))
+                    shape.functions = Integer.parseInt(args[++i]);
+                else if (arg.equals("--statements"))
+                    shape.statements = Integer.parseInt(args[++i]);
+                else if (arg.equals("--depth"))
+                    shape.depth = Integer.parseInt(args[++i]);
+                else if (arg.equals("--expression-depth"))
+                    shape.expressionDepth = Integer.parseInt(args[++i]);
+                else if (arg.equals("--params"))
+                    shape.params = Integer.parseInt(args[++i]);
+                else if (arg.equals("--globals"))
+                    shape.globals = Integer.parseInt(args[++i]);
+                else if (arg.equals("--arrays"))
+                    shape.arrays = Integer.parseInt(args[++i]);
+                else if (arg.equals("--dimensions"))
+                    shape.dimensions = Integer.parseInt(args[++i]);
+                else if (arg.equals("--extent"))
+                    shape.extent = Integer.parseInt(args[++i]);
+                else if (arg.equals("--mutations"))
+                    shape.mutations = Integer.parseInt(args[++i]);
+                else
+                    throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(-1);
+        }
+
+        try {
+            if (output == null) {
+                for (int n = 0; n < count; n++)
+                    System.out.print(generate(seed + n, shape));
+            } else if (count == 1) {
+                write(new File(output), generate(seed, shape));
+            } else {
+                // many programs go into a directory, ready for BatchCompiler
+                File dir = new File(output);
+                dir.mkdirs();
+                for (int n = 0; n < count; n++)
+                    write(new File(dir, String.format("gen%05d.crx", n)), generate(seed + n, shape));
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing generated program: " + e.getMessage());
+            System.exit(-6);
+        }
+    }
+
+    private static void write(File file, String source) throws IOException
+    {
+        Writer w = new FileWriter(file);
+        try {
+            w.write(source);
+        } finally {
+            w.close();
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package crux;
+
+class RedeclarationError extends Error
+{
+	private static final long serialVersionUID = 1L;
+
+	public RedeclarationError(Symbol sym)
+	{
+		super("Symbol " + sym + " being redeclared.");
+	}
+}
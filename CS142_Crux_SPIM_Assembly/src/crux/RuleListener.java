@@ -0,0 +1,8 @@
+package crux;
+
+// Notified as the Parser descends into and returns from each grammar rule.
+public interface RuleListener {
+	
+	public void enterRule(NonTerminal nonTerminal);
+	public void exitRule(NonTerminal nonTerminal);
+}
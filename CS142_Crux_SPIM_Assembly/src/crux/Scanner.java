@@ -1,6 +1,7 @@
 package crux;
 import java.io.IOException;
 import java.io.Reader;
+import java.util.Arrays;
 import java.util.Iterator;
 
 public class Scanner implements Iterable<Token> {
@@ -11,52 +12,114 @@ public class Scanner implements Iterable<Token> {
 	private int lineNum;  // current line count
 	private int charPos;  // character offset for current line
 	private int nextChar; // contains the next char (-1 == EOF)
-	private Reader input;
+	private char[] input; // entire source text
+	private int inputLength;
+	private int inputPos; // index of the char readChar() returns next
+	private NamePool names = new NamePool();
+	private int tokenCount; // tokens handed out so far, EOF included
+	
+	private static final int READ_CHUNK_SIZE = 64 * 1024;
 	
 	public Scanner(Reader reader)
+	{
+		this(readFully(reader));
+	}
+	
+	public Scanner(String source)
+	{
+		this(source.toCharArray());
+	}
+	
+	public Scanner(char[] source)
+	{
+		this(source, source.length);
+	}
+	
+	// Scans the first length chars of source, the array is not copied
+	public Scanner(char[] source, int length)
 	{
 		lineNum = 1;
 		charPos = 0;
-		input = reader;
+		input = source;
+		inputLength = length;
+		inputPos = 0;
 		nextChar = readChar();
 	}
+	
+	// Drains the reader into a single char array in large chunks.
+	// A read failure ends the input early, as it always has.
+	private static char[] readFully(Reader reader)
+	{
+		char[] buf = new char[READ_CHUNK_SIZE];
+		int len = 0;
+		try {
+			int n;
+			while ((n = reader.read(buf, len, buf.length - len)) != -1) {
+				len += n;
+				if (len == buf.length)
+					buf = Arrays.copyOf(buf, buf.length * 2);
+			}
+		} catch (IOException e) {
+			//e.printStackTrace();
+		} finally {
+			try {
+				reader.close();
+			} catch (IOException e) {
+			}
+		}
+		return len == buf.length ? buf : Arrays.copyOf(buf, len);
+	}
 
 	public Token next()
 	{
-		Token tok = nextImpl();
+		Token tok = nextImpl(new Token());
+		tokenCount++;
 		//System.out.println("Scanner returning: " + tok);
 		return tok;
 	}
 	
 	private int readChar()
 	{
-		int c = -1;
-		try {
-			c = input.read();
-			charPos++;
-		} catch (IOException e) {
-			//e.printStackTrace();
-		}
-		
-		if (-1 == c) {
-			try {
-				input.close();
-			} catch (IOException e) {
-			}
-		}
-		
-		return c;
+		charPos++;
+		if (inputPos < inputLength)
+			return input[inputPos++];
+		return -1;
 	}
 		
+	// Position of nextChar within the input buffer
+	private int bufferIndex()
+	{
+		return atEOF() ? inputLength : inputPos - 1;
+	}
+	
 	private boolean atEOF()
 	{
 		return -1 == nextChar;
 	}
 	
+	// The text being scanned, token slices index into it
+	char[] source()
+	{
+		return input;
+	}
+	
+	// Scans the next token into slot instead of allocating one
+	Token next(Token slot)
+	{
+		tokenCount++;
+		return nextImpl(slot);
+	}
+	
+	public int tokenCount()
+	{
+		return tokenCount;
+	}
+	
 	/* Invariants:
 	 *  - readOne is called always once before return, nextChar not inspected afterward
+	 *  - every token is written into tok, which is returned
 	 */
-	private Token nextImpl()
+	private Token nextImpl(Token tok)
 	{
 		while (Character.isWhitespace(nextChar)) {
 			if ('\n' == nextChar) {
@@ -67,7 +130,7 @@ public class Scanner implements Iterable<Token> {
 		}
 		
 		if (atEOF())
-			return Token.EOF(lineNum, charPos);
+			return tok.set(Token.Kind.EOF, "No Lexeme Given", lineNum, charPos);
 		
 		int pos = charPos;
 		
@@ -75,106 +138,97 @@ public class Scanner implements Iterable<Token> {
 			nextChar = readChar();
 			if (nextChar == '/') {
 				while ((nextChar = readChar()) != '\n') {}
-				return next();
+				return nextImpl(tok);
 			}
-			return new Token("/", lineNum, pos);
+			return tok.set(Token.Kind.DIV, lineNum, pos);
 		}
 		
 		else if (nextChar == '=') {
 			nextChar = readChar();
 			if (nextChar == '=') {
 				nextChar = readChar();
-				return new Token("==", lineNum, pos);
+				return tok.set(Token.Kind.EQUAL, lineNum, pos);
 			}
-			return new Token("=", lineNum, pos);
+			return tok.set(Token.Kind.ASSIGN, lineNum, pos);
 		}
 		
 		else if (nextChar == '<') {
 			nextChar = readChar();
 			if (nextChar == '=') {
 				nextChar = readChar();
-				return new Token("<=", lineNum, pos);
+				return tok.set(Token.Kind.LESSER_EQUAL, lineNum, pos);
 			}
-			return new Token("<", lineNum, pos);
+			return tok.set(Token.Kind.LESS_THAN, lineNum, pos);
 		}
 		
 		else if (nextChar == '>') {
 			nextChar = readChar();
 			if (nextChar == '=') {
 				nextChar = readChar();
-				return new Token(">=", lineNum, pos);
+				return tok.set(Token.Kind.GREATER_EQUAL, lineNum, pos);
 			}
-			return new Token(">", lineNum, pos);
+			return tok.set(Token.Kind.GREATER_THAN, lineNum, pos);
 		}
 		
 		else if (nextChar == ':') {
 			nextChar = readChar();
 			if (nextChar == ':') {
 				nextChar = readChar();
-				return new Token("::", lineNum, pos);
+				return tok.set(Token.Kind.CALL, lineNum, pos);
 			}
-			return new Token(":", lineNum, pos);
+			return tok.set(Token.Kind.COLON, lineNum, pos);
 		}
 		
 		else if (nextChar == '!') {
 			nextChar = readChar();
 			if (nextChar == '=') {
 				nextChar = readChar();
-				return new Token("!=", lineNum, pos);
+				return tok.set(Token.Kind.NOT_EQUAL, lineNum, pos);
 			}
-			return Token.Error("Unexpected character: "+nextChar, lineNum, pos);
+			return tok.set(Token.Kind.ERROR, "Unexpected character: "+nextChar, lineNum, pos);
 		}
 			
 		else if (Character.isDigit(nextChar))
 		{
-			String num = "";
+			int start = bufferIndex();
 			
-			while (Character.isDigit(nextChar)) {
-				num += (char)nextChar;
+			while (Character.isDigit(nextChar))
 				nextChar = readChar();
-			}
 			
 			if (nextChar == '.') {
-				num += (char)nextChar;
 				nextChar = readChar();
-				while (Character.isDigit(nextChar)) {
-					num += (char)nextChar;
+				while (Character.isDigit(nextChar))
 					nextChar = readChar();
-				}
-				return Token.Float(num, lineNum, pos);
+				return tok.setSlice(Token.Kind.FLOAT, input, start, bufferIndex() - start, lineNum, pos);
 			}
 			
-			return Token.Integer(num, lineNum, pos);
+			return tok.setSlice(Token.Kind.INTEGER, input, start, bufferIndex() - start, lineNum, pos);
 		}
 		
 		else if (Character.isLetter(nextChar) || nextChar == '_') {
-			String ident = "";
+			int start = bufferIndex();
 			
-			while (Character.isLetterOrDigit(nextChar) || nextChar == '_') {
-				ident += (char)nextChar;
+			while (Character.isLetterOrDigit(nextChar) || nextChar == '_')
 				nextChar = readChar();
-			}
 			
-			for (Token.Kind t : Token.Kind.values()) {
-				if (t.matches(ident))
-					return new Token(ident, lineNum, pos);
-			}
+			int length = bufferIndex() - start;
+			Token.Kind keyword = Token.Kind.keyword(input, start, length);
+			if (keyword != null)
+				return tok.set(keyword, lineNum, pos);
 			
-			return Token.Identifier(ident, lineNum, pos);
+			return tok.setSlice(Token.Kind.IDENTIFIER, input, start, length, names.intern(input, start, length), lineNum, pos);
 		}
 		
 		else {
-			String c = Character.toString((char)nextChar);
-			
-			for (Token.Kind t : Token.Kind.values()) {
-				if (t.matches(nextChar)) {
-					nextChar = readChar();
-					return new Token(c, lineNum, pos);
-				}
+			Token.Kind punctuation = Token.Kind.fromChar(nextChar);
+			if (punctuation != null) {
+				nextChar = readChar();
+				return tok.set(punctuation, lineNum, pos);
 			}
 			
+			String c = Character.toString((char)nextChar);
 			nextChar = readChar();
-			return Token.Error("Unexpected character: "+c, lineNum, pos);
+			return tok.set(Token.Kind.ERROR, "Unexpected character: "+c, lineNum, pos);
 		}
 	}
 
@@ -1,25 +1,29 @@
 package crux;
 
-import java.util.Vector;
+import java.util.LinkedHashMap;
 
 public class SymbolTable {
 	
 	private SymbolTable parent;
-	private Vector<Symbol> table;
+	private LinkedHashMap<String, Symbol> table; // declaration order kept for toString()
 	private int depth;
 
 	public SymbolTable()
 	{
-		this.table = new Vector<Symbol>();
-		this.parent = null;
-		this.depth = 0;
+		this(null, new LinkedHashMap<String, Symbol>());
 	}
 	
 	public SymbolTable(SymbolTable parent)
 	{
-		this.table = new Vector<Symbol>();
+		this(parent, new LinkedHashMap<String, Symbol>());
+	}
+	
+	// For subclasses that keep their symbols somewhere else (table may be null)
+	SymbolTable(SymbolTable parent, LinkedHashMap<String, Symbol> table)
+	{
+		this.table = table;
 		this.parent = parent;
-		this.depth = parent.depth + 1;
+		this.depth = parent == null ? 0 : parent.depth + 1;
 	}
 	
 	public Symbol lookup(String name) throws SymbolNotFoundError
@@ -39,21 +43,17 @@ public class SymbolTable {
 		// option 2: can only store one symbol per name
 	    //           no function overloading
 		//           can't have variable and function by same name
-		Symbol sym = get(name);
-		if (sym == null && parent != null)
-			return parent.lookup(name);
-		else if (sym == null) // && parent == null
-			throw new SymbolNotFoundError(name);
-		else
-			return sym;
+		for (SymbolTable scope = this; scope != null; scope = scope.parent) {
+			Symbol sym = scope.get(name);
+			if (sym != null)
+				return sym;
+		}
+		throw new SymbolNotFoundError(name);
 	}
 	
 	private Symbol get(String name)
 	{
-		for (Symbol sym : table)
-			if (sym.name().equals(name))
-				return sym;
-		return null;
+		return table.get(name);
 	}
 	
 	/*
@@ -72,64 +72,86 @@ public class SymbolTable {
 		assert(name != null);
 		assert(name != "");
 		
-		if (contains(name))
-			throw new RedeclarationError(get(name));
+		Symbol existing = get(name);
+		if (existing != null)
+			throw new RedeclarationError(existing);
 		Symbol sym = new Symbol(name);
-		table.add(sym);
+		table.put(name, sym);
 		return sym;
 	}
 	
-	private boolean contains(String name)
+	public String toString()
 	{
-		return null != get(name);
+		StringBuilder sb = new StringBuilder();
+		appendTo(sb, scopeSizes(), Integer.MAX_VALUE);
+		return sb.toString();
 	}
 	
-	public String toString()
+	// How many symbols each scope from this one outward holds right now.
+	// Scopes only ever grow, so this is enough to re-create toString() later.
+	int[] scopeSizes()
 	{
-		StringBuffer sb = new StringBuffer();
-		if (parent != null)
-			sb.append(parent.toString());
+		int[] sizes = new int[depth + 1];
+		for (SymbolTable scope = this; scope != null; scope = scope.parent)
+			sizes[scope.depth] = scope.declaredCount();
+		return sizes;
+	}
+	
+	// Writes the first sizes[d] symbols of each enclosing scope, outermost
+	// first, the way toString() does. Only the innermost maxScopes scopes
+	// are written, the rest are summarized on one line.
+	void appendTo(StringBuilder sb, int[] sizes, int maxScopes)
+	{
+		SymbolTable[] chain = new SymbolTable[depth + 1];
+		for (SymbolTable scope = this; scope != null; scope = scope.parent)
+			chain[scope.depth] = scope;
 		
-		String indent = new String();
-		for (int i = 0; i < depth; i++) {
-			indent += "  ";
-		}
+		int first = Math.max(0, chain.length - maxScopes);
+		if (first > 0)
+			sb.append("... " + first + " enclosing scopes not shown\n");
 		
-		for (Symbol s : table)
-		{
-			sb.append(indent + s.toString() + "\n");
+		for (int d = first; d < chain.length; d++) {
+			int remaining = sizes[d];
+			for (Symbol s : chain[d].declaredSymbols()) {
+				if (remaining-- == 0)
+					break;
+				for (int i = 0; i < d; i++)
+					sb.append("  ");
+				sb.append(s.toString()).append('\n');
+			}
 		}
-		return sb.toString();
 	}
 	
 	public SymbolTable parentTable()
 	{
 		return parent;
 	}
-}
-
-class SymbolNotFoundError extends Error
-{
-	private static final long serialVersionUID = 1L;
-	private String name;
 	
-	SymbolNotFoundError(String name)
+	// Opens a nested scope whose parent is this table
+	public SymbolTable newScope()
 	{
-		this.name = name;
+		return new SymbolTable(this);
 	}
 	
-	public String name()
+	// Closes this scope and returns the enclosing one
+	public SymbolTable closeScope()
 	{
-		return name;
+		return parent;
 	}
-}
-
-class RedeclarationError extends Error
-{
-	private static final long serialVersionUID = 1L;
-
-	public RedeclarationError(Symbol sym)
+	
+	// The symbols declared directly in this scope, in declaration order
+	Iterable<Symbol> declaredSymbols()
+	{
+		return table.values();
+	}
+	
+	int declaredCount()
+	{
+		return table.size();
+	}
+	
+	int depth()
 	{
-		super("Symbol " + sym + " being redeclared.");
+		return depth;
 	}
 }
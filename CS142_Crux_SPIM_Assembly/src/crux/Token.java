@@ -1,5 +1,7 @@
 package crux;
 
+import java.util.HashMap;
+
 public class Token {
 	
 	public static enum Kind {
@@ -74,76 +76,196 @@ public class Token {
 			return default_lexeme.equals(lexeme);
 		}
 		
+		public boolean matches(char[] source, int start, int length)
+		{
+			if (default_lexeme.length() != length)
+				return false;
+			for (int i = 0; i < length; i++) {
+				if (default_lexeme.charAt(i) != source[start + i])
+					return false;
+			}
+			return true;
+		}
+		
 		public boolean hasStaticLexeme()
 		{
 			return default_lexeme != "";
 		}
+		
+		// Lookup tables built once from the lexemes above
+		private static final HashMap<String, Kind> byLexeme = new HashMap<String, Kind>();
+		private static final Kind[] byChar = new Kind[128];
+		private static final Kind[] keywords = new Kind[64]; // open addressing, power of two
+		
+		static {
+			for (Kind k : values()) {
+				if (!k.hasStaticLexeme())
+					continue;
+				byLexeme.put(k.default_lexeme, k);
+				
+				char first = k.default_lexeme.charAt(0);
+				if (k.default_lexeme.length() == 1 && first < byChar.length)
+					byChar[first] = k;
+				
+				if (Character.isLetter(first)) {
+					int slot = hash(k.default_lexeme.toCharArray(), 0, k.default_lexeme.length());
+					while (keywords[slot] != null)
+						slot = (slot + 1) & (keywords.length - 1);
+					keywords[slot] = k;
+				}
+			}
+		}
+		
+		private static int hash(char[] source, int start, int length)
+		{
+			int h = 0;
+			for (int i = start; i < start + length; i++)
+				h = 31 * h + source[i];
+			return (h ^ (h >>> 7)) & (keywords.length - 1);
+		}
+		
+		// Returns the kind whose lexeme is exactly the given string, or null
+		public static Kind fromLexeme(String lexeme)
+		{
+			return byLexeme.get(lexeme);
+		}
+		
+		// Returns the single-character kind for c, or null
+		public static Kind fromChar(int c)
+		{
+			if (c < 0 || c >= byChar.length)
+				return null;
+			return byChar[c];
+		}
+		
+		// Returns the keyword spelled by the buffer slice, or null if it is an identifier
+		public static Kind keyword(char[] source, int start, int length)
+		{
+			int slot = hash(source, start, length);
+			Kind k;
+			while ((k = keywords[slot]) != null) {
+				if (k.matches(source, start, length))
+					return k;
+				slot = (slot + 1) & (keywords.length - 1);
+			}
+			return null;
+		}
 	}
 	
 	private int lineNum;
 	private int charPos;
 	Kind kind;
 	private String lexeme = "";
+	
+	// lexemes sliced out of the scanner's buffer are only turned
+	// into a String the first time lexeme() asks for them
+	private char[] source;
+	private int lexemeStart = -1; // -1 when the lexeme is not a slice
+	private int lexemeLength;
 
 	public static Token Error(String description, int linePos, int charPos)
 	{
-		Token tok = new Token(linePos, charPos);
-		tok.kind = Kind.ERROR;
-		tok.lexeme = description;
-		return tok;
+		return new Token().set(Kind.ERROR, description, linePos, charPos);
 	}
 	
 	public static Token EOF(int linePos, int charPos)
 	{
-		Token tok = new Token(linePos, charPos);
-		tok.kind = Kind.EOF;
-		return tok;
+		return new Token().set(Kind.EOF, "No Lexeme Given", linePos, charPos);
 	}
 	
 	public static Token Identifier(String name, int linePos, int charPos)
 	{
-		Token tok = new Token(linePos, charPos);
-		tok.kind = Kind.IDENTIFIER;
-		tok.lexeme = name;
-		return tok;
+		return new Token().set(Kind.IDENTIFIER, name, linePos, charPos);
 	}
 	
 	public static Token Integer(String value, int linePos, int charPos)
 	{
-		Token tok = new Token(linePos, charPos);
-		tok.kind = Kind.INTEGER;
-		tok.lexeme = value;
-		return tok;
+		return new Token().set(Kind.INTEGER, value, linePos, charPos);
 	}
 		
 	public static Token Float(String value, int linePos, int charPos)
 	{
-		Token tok = new Token(linePos, charPos);
-		tok.kind = Kind.FLOAT;
-		tok.lexeme = value;
-		return tok;
+		return new Token().set(Kind.FLOAT, value, linePos, charPos);
 	}
 	
-	private Token(int lineNum, int charPos)
+	Token(Kind kind, int lineNum, int charPos)
 	{
 		this.lineNum = lineNum;
 		this.charPos = charPos;
-		
-		// if we don't match anything, signal error
-		this.kind = Kind.ERROR;
+		this.kind = kind;
+	}
+	
+	// An empty slot for the Scanner to fill in
+	Token()
+	{
+		this(Kind.ERROR, 0, 0);
 		this.lexeme = "No Lexeme Given";
 	}
 	
+	// Tokens are refilled in place by TokenStream, which recycles a fixed set
+	// of them. Anything that must outlive the slot should take a copy().
+	Token set(Kind kind, String lexeme, int lineNum, int charPos)
+	{
+		this.kind = kind;
+		this.lexeme = lexeme;
+		this.source = null;
+		this.lexemeStart = -1;
+		this.lexemeLength = 0;
+		this.lineNum = lineNum;
+		this.charPos = charPos;
+		return this;
+	}
+	
+	Token set(Kind kind, int lineNum, int charPos)
+	{
+		return set(kind, "", lineNum, charPos);
+	}
+	
+	Token setSlice(Kind kind, char[] source, int start, int length, int lineNum, int charPos)
+	{
+		return setSlice(kind, source, start, length, null, lineNum, charPos);
+	}
+	
+	// lexeme, if not null, is the slice's text already made into a String
+	Token setSlice(Kind kind, char[] source, int start, int length, String lexeme, int lineNum, int charPos)
+	{
+		set(kind, lexeme, lineNum, charPos);
+		this.source = lexeme == null ? source : null;
+		this.lexemeStart = start;
+		this.lexemeLength = length;
+		return this;
+	}
+	
+	// Offset of the lexeme in the scanner's buffer, or -1 if it has none
+	int lexemeStart()
+	{
+		return lexemeStart;
+	}
+	
+	int lexemeLength()
+	{
+		return lexemeLength;
+	}
+	
+	public Token copy()
+	{
+		Token tok = new Token(kind, lineNum, charPos);
+		tok.lexeme = lexeme;
+		tok.source = source;
+		tok.lexemeStart = lexemeStart;
+		tok.lexemeLength = lexemeLength;
+		return tok;
+	}
+	
 	public Token(String lexeme, int lineNum, int charPos)
 	{
 		this.lineNum = lineNum;
 		this.charPos = charPos;
 		
-		for (Kind tok: Token.Kind.values()) {
-			if (tok.matches(lexeme)) {
-				this.kind = tok;
-				return;
-			}
+		Kind tok = Kind.fromLexeme(lexeme);
+		if (tok != null) {
+			this.kind = tok;
+			return;
 		}
 		
 		// if we don't match anything, signal error
@@ -163,7 +285,13 @@ public class Token {
 	
 	public String lexeme()
 	{
-		return kind.hasStaticLexeme() ? kind.default_lexeme : lexeme;
+		if (kind.hasStaticLexeme())
+			return kind.default_lexeme;
+		if (lexeme == null) {
+			lexeme = new String(source, lexemeStart, lexemeLength);
+			source = null;
+		}
+		return lexeme;
 	}
 	
 	public String toString()
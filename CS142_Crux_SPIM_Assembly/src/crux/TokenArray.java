@@ -0,0 +1,114 @@
+package crux;
+
+import java.util.Arrays;
+
+// Every token of a source file, stored column-wise in parallel int arrays.
+// Lexemes are (start, length) slices of the scanner's char buffer, so the
+// whole token list costs a few ints per token instead of a Token object and
+// a String each. get(i) exposes one entry through a single reused Token.
+// Identifiers keep the name the scanner's NamePool interned for them, so
+// their lexemes are as identical as the scanner's own.
+public class TokenArray {
+	
+	private static final Token.Kind[] kinds = Token.Kind.values();
+	
+	private char[] source;
+	private int size;
+	private int[] kind;
+	private int[] line;
+	private int[] col;
+	private int[] lexemeStart;
+	private int[] lexemeLength;
+	private String[] text; // interned IDENTIFIER names and ERROR messages, null otherwise
+	private Token view;
+	
+	private TokenArray(char[] source)
+	{
+		this.source = source;
+		this.size = 0;
+		int capacity = Math.max(16, source.length / 4);
+		this.kind = new int[capacity];
+		this.line = new int[capacity];
+		this.col = new int[capacity];
+		this.lexemeStart = new int[capacity];
+		this.lexemeLength = new int[capacity];
+		this.text = new String[capacity];
+		this.view = new Token();
+	}
+	
+	// Scans the rest of the input, up to and including the EOF token
+	public static TokenArray scan(Scanner scanner)
+	{
+		TokenArray tokens = new TokenArray(scanner.source());
+		Token slot = new Token();
+		do {
+			scanner.next(slot);
+			tokens.add(slot);
+		} while (!slot.is(Token.Kind.EOF));
+		return tokens;
+	}
+	
+	private void add(Token tok)
+	{
+		if (size == kind.length) {
+			int capacity = 2 * size;
+			kind = Arrays.copyOf(kind, capacity);
+			line = Arrays.copyOf(line, capacity);
+			col = Arrays.copyOf(col, capacity);
+			lexemeStart = Arrays.copyOf(lexemeStart, capacity);
+			lexemeLength = Arrays.copyOf(lexemeLength, capacity);
+			text = Arrays.copyOf(text, capacity);
+		}
+		kind[size] = tok.kind().ordinal();
+		line[size] = tok.lineNumber();
+		col[size] = tok.charPosition();
+		lexemeStart[size] = tok.lexemeStart();
+		lexemeLength[size] = tok.lexemeLength();
+		if (tok.is(Token.Kind.IDENTIFIER) || tok.is(Token.Kind.ERROR))
+			text[size] = tok.lexeme();
+		size++;
+	}
+	
+	public int size()
+	{
+		return size;
+	}
+	
+	public Token.Kind kind(int i)
+	{
+		return kinds[kind[i]];
+	}
+	
+	public int lineNumber(int i)
+	{
+		return line[i];
+	}
+	
+	public int charPosition(int i)
+	{
+		return col[i];
+	}
+	
+	// Makes a new String for sliced numbers, prefer get(i) for comparisons
+	public String lexeme(int i)
+	{
+		return get(i).lexeme();
+	}
+	
+	// Returns token i through a shared flyweight that the next get() repoints.
+	// Take a copy() to keep it.
+	public Token get(int i)
+	{
+		if (i < 0 || i >= size)
+			throw new IndexOutOfBoundsException("Token " + i + " of " + size);
+		
+		Token.Kind k = kinds[kind[i]];
+		if (lexemeStart[i] >= 0)
+			return view.setSlice(k, source, lexemeStart[i], lexemeLength[i], text[i], line[i], col[i]);
+		if (k == Token.Kind.ERROR)
+			return view.set(k, text[i], line[i], col[i]);
+		if (k == Token.Kind.EOF)
+			return view.set(k, "No Lexeme Given", line[i], col[i]);
+		return view.set(k, line[i], col[i]);
+	}
+}
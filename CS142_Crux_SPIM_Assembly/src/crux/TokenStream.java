@@ -0,0 +1,64 @@
+package crux;
+
+// A bounded window of upcoming tokens over a Scanner.
+// The window is a ring of Token slots that are filled in place and handed
+// out again once consumed, so scanning allocates no tokens however long the
+// input is. A Token returned by peek() is only valid until the stream has
+// advanced past it; callers that keep one around must take a copy().
+public class TokenStream {
+	
+	public static final int DEFAULT_LOOKAHEAD = 2;
+	
+	private Scanner scanner;
+	private Token[] ring;
+	private int mask;
+	private int head;  // slot holding the current token
+	private int count; // filled slots, starting at head
+	
+	public TokenStream(Scanner scanner)
+	{
+		this(scanner, DEFAULT_LOOKAHEAD);
+	}
+	
+	// lookahead is the largest k that peek(k) will be asked for
+	public TokenStream(Scanner scanner, int lookahead)
+	{
+		int size = 1;
+		while (size <= lookahead)
+			size <<= 1;
+		
+		this.scanner = scanner;
+		this.ring = new Token[size];
+		for (int i = 0; i < size; i++)
+			ring[i] = new Token();
+		this.mask = size - 1;
+		this.head = 0;
+		this.count = 0;
+	}
+	
+	// Returns the token k positions ahead, peek(0) is the current token
+	public Token peek(int k)
+	{
+		if (k < 0 || k >= ring.length)
+			throw new IllegalArgumentException("Lookahead " + k + " exceeds window of " + ring.length + " tokens.");
+		while (count <= k) {
+			scanner.next(ring[(head + count) & mask]);
+			count++;
+		}
+		return ring[(head + k) & mask];
+	}
+	
+	public Token current()
+	{
+		return peek(0);
+	}
+	
+	// Consumes the current token, its slot is reused for a later one
+	public void advance()
+	{
+		if (count == 0)
+			peek(0);
+		head = (head + 1) & mask;
+		count--;
+	}
+}
@@ -1,19 +1,19 @@
 package mips;
 
-import java.util.HashMap;
+import java.util.IdentityHashMap;
 
 import crux.Symbol;
 import types.*;
 
 public class ActivationRecord
 {
-    private static int fixedFrameSize = 2*4;
+    private static final int fixedFrameSize = 2*4;
 	
     private ast.FunctionDefinition func;
     private ActivationRecord parent;
     private int stackSize;
-    private HashMap<Symbol, Integer> locals;
-    private HashMap<Symbol, Integer> arguments;
+    private IdentityHashMap<Symbol, Integer> locals;
+    private IdentityHashMap<Symbol, Integer> arguments;
     
     public static ActivationRecord newGlobalFrame()
     {
@@ -55,10 +55,10 @@ public class ActivationRecord
         this.func = fd;
         this.parent = parent;
         this.stackSize = 0;
-        this.locals = new HashMap<Symbol, Integer>();
+        this.locals = new IdentityHashMap<Symbol, Integer>();
         
         // map this function's parameters
-        this.arguments = new HashMap<Symbol, Integer>();
+        this.arguments = new IdentityHashMap<Symbol, Integer>();
         int offset = 0;
         for (int i=fd.arguments().size()-1; i>=0; --i) { //in reverse stack order
             Symbol arg = fd.arguments().get(i);
@@ -88,20 +88,28 @@ public class ActivationRecord
 		locals.put(var.symbol(), -stackSize);    
 	}
     
+    // Reserves a word of the frame for a value the RegisterAllocator
+    // spilled, returns its offset from $fp
+    public int addSpillSlot()
+    {
+        stackSize += 4;
+        return -stackSize - fixedFrameSize;
+    }
+    
     public void add(Program prog, ast.ArrayDeclaration array)
     {
         throw new RuntimeException("implement adding array to local function space");
     }
     
-    public void getAddress(Program prog, String reg, Symbol sym)
+    public void getAddress(Program prog, int reg, Symbol sym)
     {
 		int relativeAddr = 0;
         if (locals.containsKey(sym)) {
     		relativeAddr = locals.get(sym) - fixedFrameSize;
-        	prog.appendInstruction("addi " + reg + ", $fp, " + relativeAddr);
+        	prog.appendInstruction(Instruction.Opcode.ADDI, reg, Register.FP, relativeAddr);
     	} else if (arguments.containsKey(sym)) {
     		relativeAddr = arguments.get(sym);
-        	prog.appendInstruction("addi " + reg + ", $fp, " + relativeAddr);
+        	prog.appendInstruction(Instruction.Opcode.ADDI, reg, Register.FP, relativeAddr);
     	} else if (parent != null) {
 			parent.getAddress(prog, reg, sym);
     	} 
@@ -132,8 +140,8 @@ class GlobalFrame extends ActivationRecord
 	}
         
     @Override
-    public void getAddress(Program prog, String reg, Symbol sym)
+    public void getAddress(Program prog, int reg, Symbol sym)
     {
-        prog.appendInstruction("la " + reg + ", " + mangleDataname(sym.name()));
+        prog.appendInstruction(Instruction.Opcode.LA, reg, prog.label(mangleDataname(sym.name())));
     }
 }
@@ -0,0 +1,124 @@
+package mips;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Writes assembly text as UTF-8 through one reusable buffer.  Nearly all of
+ * it is ASCII, which is stored a byte per char as is, without going through
+ * a charset encoder or building a String per line.  Only the odd non-ASCII
+ * char, from an identifier in a label, is encoded.  Lines end in '\n'.
+ */
+public class AssemblyWriter implements Closeable, Flushable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final WritableByteChannel channel;
+    private final OutputStream out; // behind channel, null for a channel of our own
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    public AssemblyWriter(WritableByteChannel channel)
+    {
+        this.channel = channel;
+        this.out = null;
+    }
+
+    // Writes to out, which flush() flushes and close() closes
+    public AssemblyWriter(OutputStream out)
+    {
+        this.channel = Channels.newChannel(out);
+        this.out = out;
+    }
+
+    public static AssemblyWriter open(String filename) throws IOException
+    {
+        return new AssemblyWriter(FileChannel.open(Paths.get(filename),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+    }
+
+    public void write(CharSequence s) throws IOException
+    {
+        int length = s.length();
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80) {
+                i = writeEncoded(s, i);
+                continue;
+            }
+            if (!buffer.hasRemaining())
+                drain();
+            buffer.put((byte)c);
+        }
+    }
+    
+    // Writes the code point starting at s[i] as UTF-8 and returns the index
+    // of its last char.  A lone surrogate becomes '?', as the encoder has it.
+    private int writeEncoded(CharSequence s, int i) throws IOException
+    {
+        int cp = Character.codePointAt(s, i);
+        if (buffer.remaining() < 4)
+            drain();
+        if (cp < 0x800) {
+            buffer.put((byte)(0xc0 | (cp >> 6)));
+        } else if (Character.isSurrogate((char)cp)) {
+            buffer.put((byte)'?');
+            return i;
+        } else if (cp < 0x10000) {
+            buffer.put((byte)(0xe0 | (cp >> 12)));
+            buffer.put((byte)(0x80 | ((cp >> 6) & 0x3f)));
+        } else {
+            buffer.put((byte)(0xf0 | (cp >> 18)));
+            buffer.put((byte)(0x80 | ((cp >> 12) & 0x3f)));
+            buffer.put((byte)(0x80 | ((cp >> 6) & 0x3f)));
+        }
+        buffer.put((byte)(0x80 | (cp & 0x3f)));
+        return i + Character.charCount(cp) - 1;
+    }
+
+    public void println(CharSequence s) throws IOException
+    {
+        write(s);
+        println();
+    }
+
+    public void println() throws IOException
+    {
+        if (!buffer.hasRemaining())
+            drain();
+        buffer.put((byte)'\n');
+    }
+
+    private void drain() throws IOException
+    {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+
+    @Override
+    public void flush() throws IOException
+    {
+        drain();
+        if (out != null)
+            out.flush();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        try {
+            drain();
+        } finally {
+            channel.close();
+        }
+    }
+}
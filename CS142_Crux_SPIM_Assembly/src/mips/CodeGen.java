@@ -8,15 +8,18 @@ public class CodeGen implements ast.CommandVisitor {
     private StringBuffer errorBuffer = new StringBuffer();
     private TypeChecker tc;
     private Program program;
+    private RegisterAllocator registers;
+    private RegisterAllocator.Value value; // where the last expression left its result, null if void
     private ActivationRecord currentFunction;
 	private String functionName;
-	private String currentFunctionLabel;
+	private int currentFunctionLabel;
 
     public CodeGen(TypeChecker tc)
     {
         this.tc = tc;
         this.program = new Program();
 		program.setCodeGen(this);
+        this.registers = new RegisterAllocator(program);
     }
     
     public boolean hasError()
@@ -60,10 +63,31 @@ public class CodeGen implements ast.CommandVisitor {
         return program;
     }
 
+    // Evaluates e, the caller owns the returned value and must release it
+    private RegisterAllocator.Value evaluate(Expression e)
+    {
+        e.accept(this);
+        RegisterAllocator.Value result = value;
+        value = null;
+        return result;
+    }
+
+    // Pushes v for a callee to find on the stack, and releases it
+    private void push(RegisterAllocator.Value v)
+    {
+        int reg = registers.use(v);
+        if (v.isFloat())
+            program.pushFloat(reg);
+        else
+            program.pushInt(reg);
+        registers.release(v);
+    }
+
+    // The only expression lists are call arguments, so each one is pushed
     @Override
     public void visit(ExpressionList node) {
         for (Expression e : node) {
-            e.accept(this);
+            push(evaluate(e));
         }
     }
 
@@ -77,18 +101,10 @@ public class CodeGen implements ast.CommandVisitor {
     public void visit(StatementList node) {
 		 for (Statement stmt : node) {
         	stmt.accept(this);
-        	if (stmt instanceof Call) {
-        		Call callNode = (Call) stmt;
-				Type typeOfReturn = tc.getType(callNode);
-				if (!typeOfReturn.equivalent(new VoidType())) {
-					//program.debugComment("Cleaning up unused function return value on stack.");
-					if (typeOfReturn instanceof IntType || typeOfReturn instanceof BoolType) {
-						program.popInt("$t0");
-					}
-					if (typeOfReturn instanceof FloatType) {
-						program.popFloat("$t0");
-					} 
-				}
+        	if (value != null) {
+        		// a call whose return value nobody uses, it is only dropped
+				registers.release(value);
+				value = null;
         	}
         }
     }
@@ -103,31 +119,25 @@ public class CodeGen implements ast.CommandVisitor {
 	 * Example: li $t1, 13
 	 */
     public void visit(LiteralBool node) {
-		String tempReg0 = "$t0";
-		//load the boolean value into register t0
-		StringBuilder sb = new StringBuilder("li ").append(tempReg0).append(", ");
+		value = registers.allocate(false);
+		//load the boolean value into the value's register
 		int booleanValue = 1; //denotes true
 		if(node.value() == LiteralBool.Value.FALSE){
 			booleanValue = 0;
 		}
-		program.appendInstruction(sb.append(booleanValue).toString());
-		program.pushInt(tempReg0);
+		program.appendInstruction(Instruction.Opcode.LI, value.register(), booleanValue);
     }
 
     @Override
     public void visit(LiteralFloat node) {
-		String fpReg0 = "$f0"; //floating point reg0
-		StringBuilder sb = new StringBuilder("li.s ").append(fpReg0).append(", ");
-		program.appendInstruction(sb.append(node.value()).toString());
-		program.pushFloat(fpReg0);
+		value = registers.allocate(true);
+		program.appendInstruction(Instruction.loadFloat(value.register(), node.value()));
 	}
 
     @Override
     public void visit(LiteralInt node) {
-		String tempReg0 = "$t0";
-		StringBuilder sb = new StringBuilder("li ").append(tempReg0).append(", ");
-		program.appendInstruction(sb.append(node.value()).toString());
-		program.pushInt(tempReg0);
+		value = registers.allocate(false);
+		program.appendInstruction(Instruction.Opcode.LI, value.register(), node.value());
 	}
 
     @Override
@@ -142,30 +152,32 @@ public class CodeGen implements ast.CommandVisitor {
 
     @Override
     public void visit(FunctionDefinition node) {
-		int codeSegmentSize = setupFunction(node);
+		setupFunction(node);
 		node.body().accept(this);
-		program.insertPrologue((codeSegmentSize + 1), currentFunction.stackSize());
-		program.appendInstruction(currentFunctionLabel + ":");
+		program.appendLabel(currentFunctionLabel);
 
 		Type retType = tc.getType(node);
 
 		if (retType instanceof IntType || retType instanceof BoolType) { 
-			program.popInt("$v0");
+			program.popInt(Register.V0);
 		}
 
-		if (retType.equivalent(new FloatType())) {
-			program.popFloat("$v0");
+		if (retType.equivalent(Type.FLOAT)) {
+			program.popFloat(Register.V0);
 		}
 
 		program.appendEpilogue(currentFunction.stackSize()); 
+		//the prologue goes in front of the body now that the frame size is known
+		program.endFunction(currentFunction.stackSize());
     	currentFunction = currentFunction.parent();
     }
 
-	private int setupFunction(FunctionDefinition node){
+	private void setupFunction(FunctionDefinition node){
 		functionName = node.symbol().name(); //save the function name
 		currentFunctionLabel = program.newLabel(); //create a label for jump/return statements
         currentFunction = new ActivationRecord(node, currentFunction); //create the new activation record linked to its parent
-		return program.appendInstruction(functionName + ":");	
+        registers.beginFunction(currentFunction);
+		program.beginFunction(program.label(functionName));
 	}
 
     @Override
@@ -200,17 +212,12 @@ public class CodeGen implements ast.CommandVisitor {
     
     @Override
     public void visit(LogicalNot node) {
-        String label = program.newLabel();
-        String pushLabel = program.newLabel();
-		node.expression().accept(this);
-        program.popInt("$t0");
-        program.appendInstruction("beqz $t0, " + label);
-        program.appendInstruction("li $t1, 0");
-        program.appendInstruction("b " + label);
-        program.appendInstruction(label + ":");
-        program.appendInstruction("li $t1, 1");
-        program.appendInstruction(pushLabel + ":");
-        program.pushInt("$t1");
+        // bools are 0 or 1, so flipping the low bit negates them
+        RegisterAllocator.Value operand = evaluate(node.expression());
+        int src = registers.use(operand);
+        registers.release(operand);
+        value = registers.allocate(false);
+        program.appendInstruction(Instruction.Opcode.XORI, value.register(), src, 1);
 	}
 
     @Override
@@ -237,10 +244,12 @@ public class CodeGen implements ast.CommandVisitor {
     public void visit(Call node) {
       	node.arguments().accept(this);//get the function arguments
 		
-		StringBuilder functionNodeName = new StringBuilder("func.").append(node.function().name());
+		int functionLabel = program.label("func." + node.function().name());
 		
+		//nothing stays in a register across the call
+		registers.spillAll();
 		//call the function
-        program.appendInstruction("jal " + functionNodeName.toString());
+        program.appendInstruction(Instruction.Opcode.JAL, functionLabel);
 
 		//add the arguments to the stack
         if (node.arguments().size() > 0) {
@@ -249,13 +258,13 @@ public class CodeGen implements ast.CommandVisitor {
 				Type type = tc.getType((Command) expr);
         		argSize += ActivationRecord.numBytes(type);
         	}
-			program.appendInstruction("addi $sp, $sp, " + argSize);
+			program.appendInstruction(Instruction.Opcode.ADDI, Register.SP, Register.SP, argSize);
         }
 
+		//the result is used straight out of $v0
 		FuncType func = (FuncType) node.function().type();
- 		if (!func.returnType().equivalent(new VoidType())) {
-			program.appendInstruction("subu $sp, $sp, 4");
-			program.appendInstruction("sw $v0, 0($sp)");
+ 		if (!func.returnType().equivalent(Type.VOID)) {
+			value = registers.fixed(Register.V0, func.returnType().equivalent(Type.FLOAT));
  		}
     }
 
@@ -0,0 +1,201 @@
+package mips;
+
+/*
+ * One instruction of the code segment: an opcode and up to three int
+ * operands.  Registers are numbers from Register, labels are ids handed out
+ * by the Program, and a float immediate is kept as its bits.  The text form
+ * is only produced when the Program is printed.
+ */
+public final class Instruction {
+
+    // What the operands a, b and c of an opcode mean
+    public static enum Format {
+        LABEL,      // a:              a is a label id
+        REG3,       // op $a, $b, $c
+        IMM,        // op $a, $b, c
+        LOAD_IMM,   // op $a, b
+        LOAD_FLOAT, // op $a, b        b holds the bits of a float
+        REG2,       // op $a, $b
+        MEM,        // op $a, b($c)
+        JUMP,       // op a            a is a label id
+        ADDRESS,    // op $a, b        b is a label id
+        REG1,       // op $a
+        NONE;       // op
+    }
+
+    public static enum Opcode {
+        LABEL("", Format.LABEL),
+
+        ADD("add", Format.REG3),
+        ADDU("addu", Format.REG3),
+        SUB("sub", Format.REG3),
+        SUBU("subu", Format.REG3),
+
+        ADDI("addi", Format.IMM),
+        ADDIU("addiu", Format.IMM),
+        ADDU_IMM("addu", Format.IMM),   // assembler pseudo-instructions
+        SUBU_IMM("subu", Format.IMM),
+        XORI("xori", Format.IMM),
+        ORI("ori", Format.IMM),
+        ANDI("andi", Format.IMM),
+
+        LI("li", Format.LOAD_IMM),
+        LI_S("li.s", Format.LOAD_FLOAT),
+
+        MOVE("move", Format.REG2),
+        MOV_S("mov.s", Format.REG2),
+        MTC1("mtc1", Format.REG2),
+        MFC1("mfc1", Format.REG2),
+
+        LW("lw", Format.MEM),
+        SW("sw", Format.MEM),
+        LWC1("lwc1", Format.MEM),
+        SWC1("swc1", Format.MEM),
+
+        J("j", Format.JUMP),
+        B("b", Format.JUMP),
+        JAL("jal", Format.JUMP),
+        LA("la", Format.ADDRESS),
+        JR("jr", Format.REG1),
+        SYSCALL("syscall", Format.NONE);
+
+        private String mnemonic;
+        private Format format;
+
+        Opcode(String mnemonic, Format format)
+        {
+            this.mnemonic = mnemonic;
+            this.format = format;
+        }
+
+        public String mnemonic()
+        {
+            return mnemonic;
+        }
+
+        public Format format()
+        {
+            return format;
+        }
+    }
+
+    private final Opcode op;
+    private final int a;
+    private final int b;
+    private final int c;
+
+    public Instruction(Opcode op, int a, int b, int c)
+    {
+        this.op = op;
+        this.a = a;
+        this.b = b;
+        this.c = c;
+    }
+
+    public Instruction(Opcode op, int a, int b)
+    {
+        this(op, a, b, 0);
+    }
+
+    public Instruction(Opcode op, int a)
+    {
+        this(op, a, 0, 0);
+    }
+
+    public Instruction(Opcode op)
+    {
+        this(op, 0, 0, 0);
+    }
+
+    public static Instruction label(int label)
+    {
+        return new Instruction(Opcode.LABEL, label);
+    }
+
+    public static Instruction loadFloat(int reg, float value)
+    {
+        return new Instruction(Opcode.LI_S, reg, Float.floatToIntBits(value));
+    }
+
+    public Opcode op()
+    {
+        return op;
+    }
+
+    public int a()
+    {
+        return a;
+    }
+
+    public int b()
+    {
+        return b;
+    }
+
+    public int c()
+    {
+        return c;
+    }
+
+    public boolean isLabel()
+    {
+        return op == Opcode.LABEL;
+    }
+
+    // Appends the assembly text, without a line break
+    public void appendTo(StringBuilder sb, Program program)
+    {
+        if (op == Opcode.LABEL) {
+            sb.append(program.labelName(a)).append(':');
+            return;
+        }
+        sb.append(op.mnemonic());
+        switch (op.format()) {
+        case REG3:
+            reg(sb.append(' '), a);
+            reg(sb.append(", "), b);
+            reg(sb.append(", "), c);
+            break;
+        case IMM:
+            reg(sb.append(' '), a);
+            reg(sb.append(", "), b);
+            sb.append(", ").append(c);
+            break;
+        case LOAD_IMM:
+            reg(sb.append(' '), a);
+            sb.append(", ").append(b);
+            break;
+        case LOAD_FLOAT:
+            reg(sb.append(' '), a);
+            sb.append(", ").append(Float.intBitsToFloat(b));
+            break;
+        case REG2:
+            reg(sb.append(' '), a);
+            reg(sb.append(", "), b);
+            break;
+        case MEM:
+            reg(sb.append(' '), a);
+            sb.append(", ").append(b).append('(');
+            reg(sb, c);
+            sb.append(')');
+            break;
+        case JUMP:
+            sb.append(' ').append(program.labelName(a));
+            break;
+        case ADDRESS:
+            reg(sb.append(' '), a);
+            sb.append(", ").append(program.labelName(b));
+            break;
+        case REG1:
+            reg(sb.append(' '), a);
+            break;
+        default:
+            break;
+        }
+    }
+
+    private static void reg(StringBuilder sb, int reg)
+    {
+        sb.append(Register.name(reg));
+    }
+}
@@ -0,0 +1,248 @@
+package mips;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import mips.Instruction.Format;
+import mips.Instruction.Opcode;
+
+/*
+ * Rewrites short runs of instructions in a finished code segment into
+ * cheaper ones.  Each Rule looks at the instructions from a position on and
+ * either leaves them alone or consumes some of them and writes their
+ * replacement.  Passes repeat until nothing changes, since one rewrite can
+ * line up the instructions for another.
+ *
+ * Labels are instructions of their own, so no rule ever rewrites across
+ * one.
+ */
+public class PeepholeOptimizer {
+
+    public interface Rule
+    {
+        // Returns how many instructions from code[i] on were replaced by
+        // what the rule appended to out, 0 if the rule does not apply
+        int rewrite(List<Instruction> code, int i, List<Instruction> out);
+    }
+
+    private static final int MAX_PASSES = 8;
+
+    private final List<Rule> rules;
+
+    public PeepholeOptimizer(Rule... rules)
+    {
+        this.rules = new ArrayList<Rule>(Arrays.asList(rules));
+    }
+
+    // The rules the compiler runs by default
+    public static PeepholeOptimizer standard()
+    {
+        return new PeepholeOptimizer(new PushPop(), new StackAdjust(), new FoldImmediate(), new JumpToNext());
+    }
+
+    public void add(Rule rule)
+    {
+        rules.add(rule);
+    }
+
+    // Returns the optimized code, the given list is not changed
+    public List<Instruction> optimize(List<Instruction> code)
+    {
+        List<Instruction> in = code;
+        for (int pass = 0; pass < MAX_PASSES; pass++) {
+            List<Instruction> out = new ArrayList<Instruction>(in.size());
+            boolean changed = false;
+            int i = 0;
+            while (i < in.size()) {
+                int consumed = 0;
+                for (Rule r : rules) {
+                    consumed = r.rewrite(in, i, out);
+                    if (consumed > 0)
+                        break;
+                }
+                if (consumed > 0) {
+                    changed = true;
+                    i += consumed;
+                } else {
+                    out.add(in.get(i++));
+                }
+            }
+            in = out;
+            if (!changed)
+                break;
+        }
+        return in;
+    }
+
+    static boolean fitsImmediate(long value)
+    {
+        return value >= Short.MIN_VALUE && value <= Short.MAX_VALUE;
+    }
+
+    // $sp adjustment "op $sp, $sp, n" as a signed amount, null otherwise
+    static Integer stackAdjustment(Instruction instr)
+    {
+        if (instr.op().format() != Format.IMM || instr.a() != Register.SP || instr.b() != Register.SP)
+            return null;
+        switch (instr.op()) {
+        case ADDI:
+        case ADDIU:
+        case ADDU_IMM:
+            return instr.c();
+        case SUBU_IMM:
+            return -instr.c();
+        default:
+            return null;
+        }
+    }
+
+    // The "0($sp)" access of a push or a pop
+    static boolean isTopOfStack(Instruction instr, Opcode op)
+    {
+        return instr.op() == op && instr.b() == 0 && instr.c() == Register.SP;
+    }
+
+    /*
+     * A push straight followed by a pop becomes a register move:
+     *   subu $sp, $sp, 4 / sw a, 0($sp) / lw b, 0($sp) / addiu $sp, $sp, 4
+     */
+    static class PushPop implements Rule
+    {
+        @Override
+        public int rewrite(List<Instruction> code, int i, List<Instruction> out)
+        {
+            if (i + 3 >= code.size())
+                return 0;
+            Integer down = stackAdjustment(code.get(i));
+            Integer up = stackAdjustment(code.get(i + 3));
+            if (down == null || up == null || down != -4 || up != 4)
+                return 0;
+            Instruction store = code.get(i + 1);
+            Instruction load = code.get(i + 2);
+
+            int a = store.a();
+            int b = load.a();
+            if (isTopOfStack(store, Opcode.SW) && isTopOfStack(load, Opcode.LW)) {
+                if (a != b)
+                    out.add(new Instruction(Opcode.MOVE, b, a));
+            } else if (isTopOfStack(store, Opcode.SWC1) && isTopOfStack(load, Opcode.LWC1)) {
+                if (a != b)
+                    out.add(new Instruction(Opcode.MOV_S, b, a));
+            } else if (isTopOfStack(store, Opcode.SW) && isTopOfStack(load, Opcode.LWC1)) {
+                out.add(new Instruction(Opcode.MTC1, a, b));
+            } else if (isTopOfStack(store, Opcode.SWC1) && isTopOfStack(load, Opcode.LW)) {
+                out.add(new Instruction(Opcode.MFC1, b, a));
+            } else {
+                return 0;
+            }
+            return 4;
+        }
+    }
+
+    // Adjacent $sp adjustments add up to one, or to none
+    static class StackAdjust implements Rule
+    {
+        @Override
+        public int rewrite(List<Instruction> code, int i, List<Instruction> out)
+        {
+            if (i + 1 >= code.size())
+                return 0;
+            Integer first = stackAdjustment(code.get(i));
+            Integer second = stackAdjustment(code.get(i + 1));
+            if (first == null || second == null)
+                return 0;
+            long total = (long)first + second;
+            if (!fitsImmediate(total))
+                return 0;
+            if (total > 0)
+                out.add(new Instruction(Opcode.ADDIU, Register.SP, Register.SP, (int)total));
+            else if (total < 0)
+                out.add(new Instruction(Opcode.SUBU_IMM, Register.SP, Register.SP, (int)-total));
+            return 2;
+        }
+    }
+
+    /*
+     * A constant loaded into a register that the next instruction overwrites
+     * is folded into that instruction:
+     *   li x, n / addiu x, x, m  ->  li x, n+m       (also addi, xori, ori, andi)
+     *   li x, n / addu x, y, x   ->  addiu x, y, n   (also add, sub, subu)
+     */
+    static class FoldImmediate implements Rule
+    {
+        @Override
+        public int rewrite(List<Instruction> code, int i, List<Instruction> out)
+        {
+            if (i + 1 >= code.size() || code.get(i).op() != Opcode.LI)
+                return 0;
+            int x = code.get(i).a();
+            int n = code.get(i).b();
+            Instruction next = code.get(i + 1);
+            if (next.a() != x)
+                return 0;
+
+            if (next.op().format() == Format.IMM && next.b() == x) {
+                int m = next.c();
+                long result;
+                switch (next.op()) {
+                case ADDI:
+                case ADDIU:
+                    result = (long)n + m;
+                    break;
+                case XORI:
+                    result = n ^ m;
+                    break;
+                case ORI:
+                    result = n | m;
+                    break;
+                case ANDI:
+                    result = n & m;
+                    break;
+                default:
+                    return 0;
+                }
+                if (result < Integer.MIN_VALUE || result > Integer.MAX_VALUE)
+                    return 0;
+                out.add(new Instruction(Opcode.LI, x, (int)result));
+                return 2;
+            }
+
+            if (next.op().format() != Format.REG3)
+                return 0;
+            // x is overwritten, so the constant has no other use
+            boolean add = next.op() == Opcode.ADD || next.op() == Opcode.ADDU;
+            int y;
+            if (next.c() == x && next.b() != x)
+                y = next.b();
+            else if (add && next.b() == x && next.c() != x)
+                y = next.c();
+            else
+                return 0;
+
+            long amount = add ? n : -(long)n;
+            if (!fitsImmediate(amount))
+                return 0;
+            boolean trapping = next.op() == Opcode.ADD || next.op() == Opcode.SUB;
+            out.add(new Instruction(trapping ? Opcode.ADDI : Opcode.ADDIU, x, y, (int)amount));
+            return 2;
+        }
+    }
+
+    // A branch or jump to the label right after it does nothing
+    static class JumpToNext implements Rule
+    {
+        @Override
+        public int rewrite(List<Instruction> code, int i, List<Instruction> out)
+        {
+            Instruction jump = code.get(i);
+            if (jump.op() != Opcode.B && jump.op() != Opcode.J)
+                return 0;
+            for (int k = i + 1; k < code.size() && code.get(k).isLabel(); k++) {
+                if (code.get(k).a() == jump.a())
+                    return 1;
+            }
+            return 0;
+        }
+    }
+}
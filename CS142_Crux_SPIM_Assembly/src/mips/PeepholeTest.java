@@ -0,0 +1,310 @@
+package mips;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import mips.Instruction.Opcode;
+
+/*
+ * Golden file check of the standard peephole rules.  Each case is a fixed
+ * instruction sequence; the driver renders it before and after
+ * PeepholeOptimizer.standard() and compares all cases against the master
+ * file, by default tests/peephole.out under the module directory.
+ *
+ * usage: PeepholeTest [--write] [master-file]
+ *
+ * --write replaces the master with the current output, check its diff
+ * before committing it.
+ */
+public class PeepholeTest {
+
+    private static final int T0 = Register.T0;
+    private static final int T1 = Register.T0 + 1;
+    private static final int T2 = Register.T0 + 2;
+    private static final int SP = Register.SP;
+
+    private final Program program = new Program(); // names the labels
+    private final StringBuilder report = new StringBuilder();
+    private List<Instruction> code;
+
+    public static void main(String[] args) throws IOException
+    {
+        boolean write = false;
+        String master = "tests/peephole.out";
+        for (String arg : args) {
+            if (arg.equals("--write"))
+                write = true;
+            else
+                master = arg;
+        }
+
+        PeepholeTest test = new PeepholeTest();
+        test.run();
+        String actual = test.report.toString();
+        Path masterPath = Paths.get(master);
+
+        if (write) {
+            Files.write(masterPath, actual.getBytes(StandardCharsets.US_ASCII));
+            System.out.println("Wrote " + master);
+            return;
+        }
+        String expected = new String(Files.readAllBytes(masterPath), StandardCharsets.US_ASCII);
+        if (!expected.equals(actual)) {
+            System.err.println("Files were not the same: " + master);
+            printFirstDifference(expected, actual);
+            System.exit(1);
+        }
+        System.out.println("Peephole output matches " + master);
+    }
+
+    private static void printFirstDifference(String expected, String actual)
+    {
+        String[] e = expected.split("\n", -1);
+        String[] a = actual.split("\n", -1);
+        String section = "";
+        for (int i = 0; i < Math.max(e.length, a.length); i++) {
+            String el = i < e.length ? e[i] : "<end of file>";
+            String al = i < a.length ? a[i] : "<end of file>";
+            if (el.startsWith("== "))
+                section = el;
+            if (!el.equals(al)) {
+                System.err.println("in " + section + ", line " + (i + 1));
+                System.err.println("  expected: " + el);
+                System.err.println("  actual:   " + al);
+                return;
+            }
+        }
+    }
+
+    private void run()
+    {
+        // PushPop
+        begin("push then pop, int to int");
+        pushInt(T0); popInt(T1);
+        end();
+        begin("push then pop, same register");
+        pushInt(T0); popInt(T0);
+        end();
+        begin("push then pop, float to float");
+        pushFloat(Register.f(0)); popFloat(Register.f(1));
+        end();
+        begin("push int, pop float");
+        pushInt(T0); popFloat(Register.f(2));
+        end();
+        begin("push float, pop int");
+        pushFloat(Register.f(0)); popInt(Register.V0);
+        end();
+        begin("push then pop at another offset is kept");
+        emit(Opcode.SUBU_IMM, SP, SP, 4);
+        emit(Opcode.SW, T0, 4, SP);
+        emit(Opcode.LW, T1, 0, SP);
+        emit(Opcode.ADDIU, SP, SP, 4);
+        end();
+        begin("push of 8 bytes is kept");
+        emit(Opcode.SUBU_IMM, SP, SP, 8);
+        emit(Opcode.SW, T0, 0, SP);
+        emit(Opcode.LW, T1, 0, SP);
+        emit(Opcode.ADDIU, SP, SP, 8);
+        end();
+
+        // StackAdjust
+        begin("stack adjustments merge");
+        emit(Opcode.ADDI, SP, SP, 8);
+        emit(Opcode.SUBU_IMM, SP, SP, 4);
+        end();
+        begin("stack adjustments cancel");
+        emit(Opcode.ADDIU, SP, SP, 4);
+        emit(Opcode.SUBU_IMM, SP, SP, 4);
+        end();
+        begin("stack adjustments up to 32767");
+        emit(Opcode.ADDIU, SP, SP, 16384);
+        emit(Opcode.ADDIU, SP, SP, 16383);
+        end();
+        begin("stack adjustments over 32767 are kept");
+        emit(Opcode.ADDIU, SP, SP, 16384);
+        emit(Opcode.ADDIU, SP, SP, 16384);
+        end();
+        begin("stack adjustments down to -32768");
+        emit(Opcode.SUBU_IMM, SP, SP, 16384);
+        emit(Opcode.SUBU_IMM, SP, SP, 16384);
+        end();
+        begin("stack adjustments under -32768 are kept");
+        emit(Opcode.SUBU_IMM, SP, SP, 16384);
+        emit(Opcode.SUBU_IMM, SP, SP, 16385);
+        end();
+        begin("stack adjustment next to a push");
+        emit(Opcode.ADDI, SP, SP, 8);
+        pushInt(T0); popInt(T0);
+        end();
+
+        // FoldImmediate
+        begin("li then addiu");
+        emit(Opcode.LI, T0, 5);
+        emit(Opcode.ADDIU, T0, T0, -7);
+        end();
+        begin("li then xori");
+        emit(Opcode.LI, T0, 0);
+        emit(Opcode.XORI, T0, T0, 1);
+        end();
+        begin("li then ori");
+        emit(Opcode.LI, T0, 12);
+        emit(Opcode.ORI, T0, T0, 3);
+        end();
+        begin("li then andi");
+        emit(Opcode.LI, T0, 12);
+        emit(Opcode.ANDI, T0, T0, 10);
+        end();
+        begin("li then addi past the int range is kept");
+        emit(Opcode.LI, T0, Integer.MAX_VALUE);
+        emit(Opcode.ADDI, T0, T0, 1);
+        end();
+        begin("li then addi on another register is kept");
+        emit(Opcode.LI, T0, 5);
+        emit(Opcode.ADDI, T0, T1, 1);
+        end();
+        begin("li then addu, constant on the right, 32767");
+        emit(Opcode.LI, T0, 32767);
+        emit(Opcode.ADDU, T0, T1, T0);
+        end();
+        begin("li then addu, constant on the left, -32768");
+        emit(Opcode.LI, T0, -32768);
+        emit(Opcode.ADDU, T0, T0, T1);
+        end();
+        begin("li then add of 32768 is kept");
+        emit(Opcode.LI, T0, 32768);
+        emit(Opcode.ADD, T0, T1, T0);
+        end();
+        begin("li then add of -32769 is kept");
+        emit(Opcode.LI, T0, -32769);
+        emit(Opcode.ADD, T0, T1, T0);
+        end();
+        begin("li then add traps like addi");
+        emit(Opcode.LI, T0, 7);
+        emit(Opcode.ADD, T0, T1, T0);
+        end();
+        begin("li then subu of 32768");
+        emit(Opcode.LI, T0, 32768);
+        emit(Opcode.SUBU, T0, T1, T0);
+        end();
+        begin("li then sub of 32767");
+        emit(Opcode.LI, T0, 32767);
+        emit(Opcode.SUB, T0, T1, T0);
+        end();
+        begin("li then sub of -32768 is kept");
+        emit(Opcode.LI, T0, -32768);
+        emit(Opcode.SUB, T0, T1, T0);
+        end();
+        begin("li then sub with the constant on the left is kept");
+        emit(Opcode.LI, T0, 5);
+        emit(Opcode.SUB, T0, T0, T1);
+        end();
+        begin("li then subu with the constant on the left is kept");
+        emit(Opcode.LI, T0, 5);
+        emit(Opcode.SUBU, T0, T0, T1);
+        end();
+        begin("li then addu into another register is kept");
+        emit(Opcode.LI, T0, 5);
+        emit(Opcode.ADDU, T2, T1, T0);
+        end();
+        begin("li then addu of itself is kept");
+        emit(Opcode.LI, T0, 5);
+        emit(Opcode.ADDU, T0, T0, T0);
+        end();
+
+        // JumpToNext
+        int first = program.newLabel();
+        int second = program.newLabel();
+        begin("branch to the next label");
+        emit(Opcode.B, first);
+        label(first);
+        end();
+        begin("jump past other labels to its own");
+        emit(Opcode.J, second);
+        label(first);
+        label(second);
+        end();
+        begin("branch over an instruction is kept");
+        emit(Opcode.B, first);
+        emit(Opcode.LI, T0, 1);
+        label(first);
+        end();
+        begin("jal to the next label is kept");
+        emit(Opcode.JAL, first);
+        label(first);
+        end();
+    }
+
+    private void begin(String name)
+    {
+        code = new ArrayList<Instruction>();
+        report.append("== ").append(name).append('\n');
+    }
+
+    // Records the case's input and what the optimizer made of it
+    private void end()
+    {
+        render(code);
+        report.append("--\n");
+        render(PeepholeOptimizer.standard().optimize(code));
+        report.append('\n');
+    }
+
+    private void render(List<Instruction> instructions)
+    {
+        for (Instruction instr : instructions) {
+            instr.appendTo(report, program);
+            report.append('\n');
+        }
+    }
+
+    private void emit(Opcode op, int a, int b, int c)
+    {
+        code.add(new Instruction(op, a, b, c));
+    }
+
+    private void emit(Opcode op, int a, int b)
+    {
+        code.add(new Instruction(op, a, b));
+    }
+
+    private void emit(Opcode op, int a)
+    {
+        code.add(new Instruction(op, a));
+    }
+
+    private void label(int label)
+    {
+        code.add(Instruction.label(label));
+    }
+
+    // The same sequences Program.pushInt() and friends emit
+
+    private void pushInt(int reg)
+    {
+        emit(Opcode.SUBU_IMM, SP, SP, 4);
+        emit(Opcode.SW, reg, 0, SP);
+    }
+
+    private void pushFloat(int reg)
+    {
+        emit(Opcode.SUBU_IMM, SP, SP, 4);
+        emit(Opcode.SWC1, reg, 0, SP);
+    }
+
+    private void popInt(int reg)
+    {
+        emit(Opcode.LW, reg, 0, SP);
+        emit(Opcode.ADDIU, SP, SP, 4);
+    }
+
+    private void popFloat(int reg)
+    {
+        emit(Opcode.LWC1, reg, 0, SP);
+        emit(Opcode.ADDIU, SP, SP, 4);
+    }
+}
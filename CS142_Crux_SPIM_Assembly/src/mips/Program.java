@@ -1,22 +1,42 @@
 package mips;
 
+import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Vector;
 
+import mips.Instruction.Opcode;
+
 public class Program {
-    private Vector<String> codeSegment;
+    private ArrayList<Instruction> codeSegment;
+    private ArrayList<Instruction> code;         // appended to, the function body while a function is open
+    private ArrayList<Instruction> functionBody;
+    private int functionLabel;
+    private int writtenInstructions;             // streamed out and dropped from codeSegment
+    private int eliminated;
+    
+    private AssemblyWriter stream;               // where finished functions go, null unless streaming
+    private PeepholeOptimizer streamOptimizer;
+    private IOException streamError;             // reported by finishStream()
+    private StringBuilder line = new StringBuilder();
     private Vector<String> dataSegment;
     
     private int labelCounter;
+    private ArrayList<String> labelNames;        // by label id
+    private HashMap<String, Integer> namedLabels; // ids of the labels made by label(name)
 
 	private CodeGen codeGen;
     
     public Program()
     {
         labelCounter = -1;
-        codeSegment = new Vector<String>();
+        codeSegment = new ArrayList<Instruction>();
+        functionBody = new ArrayList<Instruction>();
+        code = codeSegment;
         dataSegment = new Vector<String>();
+        labelNames = new ArrayList<String>();
+        namedLabels = new HashMap<String, Integer>();
     }
 
 	public void setCodeGen(CodeGen codeGen) {
@@ -25,34 +45,116 @@ public class Program {
     
 	/**
 	 * Used to create the labels in the assembly output
-	 * @return 
+	 * @return the id of the label
 	 */
-    public String newLabel()
+    public int newLabel()
     {
     	// Returns a unique label
         labelCounter++;
-        return "label." + labelCounter;
+        return addLabel("label." + labelCounter);
+    }
+    
+    // The id of the label called name, like a function's
+    public int label(String name)
+    {
+        Integer id = namedLabels.get(name);
+        if (id == null) {
+            id = addLabel(name);
+            namedLabels.put(name, id);
+        }
+        return id;
+    }
+    
+    private int addLabel(String name)
+    {
+        labelNames.add(name);
+        return labelNames.size() - 1;
+    }
+    
+    public String labelName(int label)
+    {
+        return labelNames.get(label);
     }
     
     // Insert an instruction into the code segment
-    // Returns the position of the instruction in the stream
-    public int appendInstruction(String instr)
+    // Returns the position of the instruction in the stream, which is
+    // within the function body while a function is open
+    public int appendInstruction(Instruction instr)
+    {
+        code.add(instr);
+        return code.size() - 1;
+    }
+    
+    public int appendInstruction(Instruction.Opcode op, int a, int b, int c)
+    {
+        return appendInstruction(new Instruction(op, a, b, c));
+    }
+    
+    public int appendInstruction(Instruction.Opcode op, int a, int b)
+    {
+        return appendInstruction(new Instruction(op, a, b));
+    }
+    
+    public int appendInstruction(Instruction.Opcode op, int a)
+    {
+        return appendInstruction(new Instruction(op, a));
+    }
+    
+    public int appendInstruction(Instruction.Opcode op)
+    {
+        return appendInstruction(new Instruction(op));
+    }
+    
+    // Append the definition of a label
+    public int appendLabel(int label)
     {
-        codeSegment.add(instr);
-        return codeSegment.size() - 1;
+        return appendInstruction(Instruction.label(label));
     }
     
     // Replaces the instruction at position pos
-    public void replaceInstruction(int pos, String instr)
+    public void replaceInstruction(int pos, Instruction instr)
     {
-        codeSegment.set(pos, instr);
+        code.set(pos, instr);
     }
     
     // Inserts an instruction at position pos
     // All instructions after pos are shifted down
-    public void insertInstruction(int pos, String instr)
+    public void insertInstruction(int pos, Instruction instr)
+    {
+        code.add(pos, instr);
+    }
+    
+    // Number of instructions in the code segment, labels not counted
+    public int instructionCount()
+    {
+        return writtenInstructions + countInstructions(codeSegment);
+    }
+    
+    private static int countInstructions(ArrayList<Instruction> code)
     {
-        codeSegment.add(pos, instr);
+        int count = 0;
+        for (Instruction instr : code) {
+            if (!instr.isLabel())
+                count++;
+        }
+        return count;
+    }
+    
+    // Rewrites the code segment with the given optimizer
+    // Returns the number of instructions eliminated
+    public int optimize(PeepholeOptimizer optimizer)
+    {
+        int before = countInstructions(codeSegment);
+        codeSegment = new ArrayList<Instruction>(optimizer.optimize(codeSegment));
+        int removed = before - countInstructions(codeSegment);
+        eliminated += removed;
+        return removed;
+    }
+    
+    // Instructions removed by all optimize calls, streamed functions included
+    public int eliminatedCount()
+    {
+        return eliminated;
     }
     
     // Append item to data segment
@@ -62,74 +164,144 @@ public class Program {
     }
     
     // Push an integer register on the stack
-	String push4Bytes = "subu $sp, $sp, 4"; 
-    public void pushInt(String reg)
+    public void pushInt(int reg)
     {
-  		appendInstruction(push4Bytes);
-        appendInstruction("sw " + reg + ", 0($sp)");
+        appendInstruction(Opcode.SUBU_IMM, Register.SP, Register.SP, 4);
+        appendInstruction(Opcode.SW, reg, 0, Register.SP);
     }
     
     // Push a single precision floating point register on the stack
-    public void pushFloat(String reg)
+    public void pushFloat(int reg)
     {
-        appendInstruction(push4Bytes);
-        appendInstruction("swc1 " + reg + ", 0($sp)");
+        appendInstruction(Opcode.SUBU_IMM, Register.SP, Register.SP, 4);
+        appendInstruction(Opcode.SWC1, reg, 0, Register.SP);
     }
     
     // Pop an integer from the stack into register reg
-    public void popInt(String reg)
+    public void popInt(int reg)
     {
-        appendInstruction("lw " + reg + ", 0($sp)");
-    	appendInstruction("addiu $sp, $sp, 4");
+        appendInstruction(Opcode.LW, reg, 0, Register.SP);
+        appendInstruction(Opcode.ADDIU, Register.SP, Register.SP, 4);
     }
     
     // Pop a floating point value from the stack into register reg
-    public void popFloat(String reg)
+    public void popFloat(int reg)
     {
-    	appendInstruction("lwc1 " + reg + ", 0($sp)");
-    	appendInstruction("addiu $sp, $sp, 4");    
+        appendInstruction(Opcode.LWC1, reg, 0, Register.SP);
+        appendInstruction(Opcode.ADDIU, Register.SP, Register.SP, 4);
 	}
     
-    // Insert a function prologue at position pos
-    public void insertPrologue(int pos, int frameSize)
+    // Starts the function at label.  Its body is collected on its own until
+    // endFunction, when the frame size the prologue needs is known.
+    public void beginFunction(int label)
+    {
+        functionLabel = label;
+        functionBody.clear();
+        code = functionBody;
+    }
+    
+    // Appends the open function to the code segment, prologue first
+    public void endFunction(int frameSize)
+    {
+        code = codeSegment;
+        appendLabel(functionLabel);
+        appendPrologue(frameSize);
+        codeSegment.addAll(functionBody);
+        functionBody.clear();
+        if (stream != null && streamError == null) {
+            try {
+                writeCode(stream);
+            } catch (IOException e) {
+                streamError = e;
+            }
+        }
+    }
+    
+    // Append a function prologue
+    private void appendPrologue(int frameSize)
     {
-       	ArrayList<String> prologue = new ArrayList<String>();
-    	prologue.add("subu $sp, $sp, 8");
-    	prologue.add("sw $fp, 0($sp)");
-    	prologue.add("sw $ra, 4($sp)");
-    	prologue.add("addi $fp, $sp, 8");
+    	appendInstruction(Opcode.SUBU_IMM, Register.SP, Register.SP, 8);
+    	appendInstruction(Opcode.SW, Register.FP, 0, Register.SP);
+    	appendInstruction(Opcode.SW, Register.RA, 4, Register.SP);
+    	appendInstruction(Opcode.ADDI, Register.FP, Register.SP, 8);
     	if (frameSize > 0 ) {
-    		prologue.add("subu $sp, $sp, " + frameSize);
+    		appendInstruction(Opcode.SUBU_IMM, Register.SP, Register.SP, frameSize);
     	}
-    	codeSegment.addAll(pos, prologue);
     }
     
     // Append a function epilogue
     public void appendEpilogue(int frameSize)
     {
 		if (frameSize > 0) {
-    		appendInstruction("addu $sp, $sp, " + frameSize);
+    		appendInstruction(Opcode.ADDU_IMM, Register.SP, Register.SP, frameSize);
     	}
     	if (codeGen.isCurrentFunctionMain()) { //if in the main we just terminate
     		appendExitSequence();
 			return;
 		}
 
-   		appendInstruction("lw $ra, 4($sp)");
-   		appendInstruction("lw $fp, 0($sp)");
-   		appendInstruction("addu $sp, $sp, 8" );
-   		appendInstruction("jr $ra");
+   		appendInstruction(Opcode.LW, Register.RA, 4, Register.SP);
+   		appendInstruction(Opcode.LW, Register.FP, 0, Register.SP);
+   		appendInstruction(Opcode.ADDU_IMM, Register.SP, Register.SP, 8);
+   		appendInstruction(Opcode.JR, Register.RA);
     }
 
     // Insert code that terminates the program
     public void appendExitSequence()
     {
-        codeSegment.add("li    $v0, 10");
-        codeSegment.add("syscall");
+        appendInstruction(Opcode.LI, Register.V0, 10);
+        appendInstruction(Opcode.SYSCALL);
     }
     
     //Print the program to the provided stream
     public void print(PrintStream s)
+    {
+        AssemblyWriter w = new AssemblyWriter(s);
+        try {
+            write(w);
+            w.flush();
+        } catch (IOException e) {
+            // a PrintStream keeps its errors to itself
+            throw new RuntimeException(e);
+        }
+    }
+    
+    // Write the program, the writer is left open
+    public void write(AssemblyWriter w) throws IOException
+    {
+        writeDataSegment(w);
+        writeCodeHeader(w);
+        writeCode(w);
+        w.println("                              # END Code Segment");
+    }
+    
+    /*
+     * Writes each function to w, peephole optimized, as soon as it is
+     * finished instead of keeping it in the code segment.  The code segment
+     * header is written right away, and finishStream() writes the rest.
+     * The data segment comes last then, since globals may still be
+     * declared after the first function.
+     */
+    public void streamTo(AssemblyWriter w, PeepholeOptimizer optimizer) throws IOException
+    {
+        stream = w;
+        streamOptimizer = optimizer;
+        writeCodeHeader(w);
+        writeCode(w);
+    }
+    
+    public void finishStream() throws IOException
+    {
+        if (streamError != null)
+            throw streamError;
+        writeCode(stream);
+        stream.println("                              # END Code Segment");
+        writeDataSegment(stream);
+        stream.flush();
+        stream = null;
+    }
+    
+    private void writeDataSegment(AssemblyWriter s) throws IOException
     {
         s.println(".data                         # BEGIN Data Segment");
         for (String data : dataSegment)
@@ -140,7 +312,10 @@ public class Program {
         s.println("data.trueString:   .asciiz       \"true\"");
         s.println("data.falseString:  .asciiz       \"false\"");
         s.println("                              # END Data Segment");
-
+    }
+    
+    private void writeCodeHeader(AssemblyWriter s) throws IOException
+    {
         s.println(".text                         # BEGIN Code Segment");
         // provide the built-in functions
         funcPrintBool(s);
@@ -151,14 +326,28 @@ public class Program {
         funcReadInt(s);
 
         s.println(".text                         # BEGIN Crux Program");
-        // write out the crux program
-        for (String code : codeSegment)
-            s.println(code);
-        s.println("                              # END Code Segment");
+    }
+    
+    // Write out the crux program, when streaming only what was not
+    // written yet
+    private void writeCode(AssemblyWriter s) throws IOException
+    {
+        if (stream != null) {
+            if (streamOptimizer != null)
+                optimize(streamOptimizer);
+            writtenInstructions += countInstructions(codeSegment);
+        }
+        for (Instruction instr : codeSegment) {
+            line.setLength(0);
+            instr.appendTo(line, this);
+            s.println(line);
+        }
+        if (stream != null)
+            codeSegment.clear();
     }
     
     // Prints the current stack value, assuming it's an int
-    public void funcPrintInt(PrintStream s)
+    public void funcPrintInt(AssemblyWriter s) throws IOException
     {
         s.println("func.printInt:");
         s.println("lw   $a0, 0($sp)");
@@ -168,7 +357,7 @@ public class Program {
     }
     
     // Prints the current stack value assuming it's a bool
-    public void funcPrintBool(PrintStream s)
+    public void funcPrintBool(AssemblyWriter s) throws IOException
     {
         s.println("func.printBool:");
         s.println("lw $a0, 0($sp)");
@@ -184,7 +373,7 @@ public class Program {
     }
     
     // Prints the current stack value assuming it's a float
-    private void funcPrintFloat(PrintStream s)
+    private void funcPrintFloat(AssemblyWriter s) throws IOException
     {
         s.println("func.printFloat:");
         s.println("l.s  $f12, 0($sp)");
@@ -194,7 +383,7 @@ public class Program {
     }
     
     // Prints a newline
-    private void funcPrintln(PrintStream s)
+    private void funcPrintln(AssemblyWriter s) throws IOException
     {
         s.println("func.println:");
         s.println("la   $a0, data.newline");
@@ -204,7 +393,7 @@ public class Program {
     }
     
     // Reads an int onto the stack
-    private void funcReadInt(PrintStream s)
+    private void funcReadInt(AssemblyWriter s) throws IOException
     {
         s.println("func.readInt:");
         s.println("la   $a0, data.intquery");
@@ -216,7 +405,7 @@ public class Program {
     }
     
     // Reads a float onto the stack
-    private void funcReadFloat(PrintStream s)
+    private void funcReadFloat(AssemblyWriter s) throws IOException
     {
         s.println("func.readFloat:");
         s.println("la   $a0, data.floatquery");
@@ -0,0 +1,51 @@
+package mips;
+
+// MIPS registers as small ints.  The integer registers keep their hardware
+// numbers, the floating point registers $f0 to $f31 come after them.
+public final class Register {
+
+    public static final int ZERO = 0;
+    public static final int V0 = 2;
+    public static final int A0 = 4;
+    public static final int T0 = 8;
+    public static final int S0 = 16;
+    public static final int T8 = 24;
+    public static final int SP = 29;
+    public static final int FP = 30;
+    public static final int RA = 31;
+    public static final int F0 = 32;
+
+    private static final String[] names = new String[64];
+
+    static {
+        String[] ints = {
+            "$zero", "$at", "$v0", "$v1", "$a0", "$a1", "$a2", "$a3",
+            "$t0", "$t1", "$t2", "$t3", "$t4", "$t5", "$t6", "$t7",
+            "$s0", "$s1", "$s2", "$s3", "$s4", "$s5", "$s6", "$s7",
+            "$t8", "$t9", "$k0", "$k1", "$gp", "$sp", "$fp", "$ra"
+        };
+        for (int i = 0; i < 32; i++) {
+            names[i] = ints[i];
+            names[F0 + i] = "$f" + i;
+        }
+    }
+
+    private Register()
+    {
+    }
+
+    public static int f(int n)
+    {
+        return F0 + n;
+    }
+
+    public static boolean isFloat(int reg)
+    {
+        return reg >= F0;
+    }
+
+    public static String name(int reg)
+    {
+        return names[reg];
+    }
+}
@@ -0,0 +1,187 @@
+package mips;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import mips.Instruction.Opcode;
+
+/*
+ * Keeps the temporaries of expression evaluation in registers instead of
+ * pushing every one of them on the stack.
+ *
+ * This is linear scan done as the code is generated.  CodeGen walks each
+ * expression tree once, so a temporary's live range starts where its value
+ * is computed and ends at its only use, and the ranges nest.  When no
+ * register is free the active range that ends furthest away is spilled,
+ * and with nested ranges that is the oldest one.  Spilled values go to
+ * slots in the function's ActivationRecord and are reloaded on use.
+ *
+ * No value stays in a register across a call.  spillAll() is called before
+ * every jal, so callees may use any register here without saving it.
+ *
+ * Only expression temporaries are allocated.  There is no liveness analysis
+ * over a whole FunctionDefinition: scalar locals and parameters keep living
+ * in their frame slots and are loaded and stored there on every access.
+ */
+public class RegisterAllocator {
+
+    // $t0-$t9, then $s0-$s7
+    private static final int[] INT_REGISTERS = {
+        Register.T0, Register.T0 + 1, Register.T0 + 2, Register.T0 + 3, Register.T0 + 4,
+        Register.T0 + 5, Register.T0 + 6, Register.T0 + 7, Register.T8, Register.T8 + 1,
+        Register.S0, Register.S0 + 1, Register.S0 + 2, Register.S0 + 3,
+        Register.S0 + 4, Register.S0 + 5, Register.S0 + 6, Register.S0 + 7
+    };
+
+    // $f0-$f11, $f12 is left alone, it carries the argument of the print syscall
+    private static final int NUM_FLOAT_REGISTERS = 12;
+
+    private static final int SPILLED = -1;
+
+    // A value computed by the generated code, held in a register or a frame slot
+    public static class Value
+    {
+        private final boolean isFloat;
+        private int register;      // SPILLED while spilled
+        private int slot;          // $fp offset while spilled
+        private boolean pinned;    // in use by the instruction being emitted
+        private boolean fixed;     // lives in a register outside the pools
+
+        private Value(boolean isFloat, int register, boolean fixed)
+        {
+            this.isFloat = isFloat;
+            this.register = register;
+            this.fixed = fixed;
+        }
+
+        public boolean isFloat()
+        {
+            return isFloat;
+        }
+
+        // The register to compute a newly allocated value into
+        public int register()
+        {
+            return register;
+        }
+    }
+
+    private final Program program;
+    private ActivationRecord frame;
+    private final ArrayDeque<Integer> freeInts = new ArrayDeque<Integer>();
+    private final ArrayDeque<Integer> freeFloats = new ArrayDeque<Integer>();
+    private final List<Value> active = new ArrayList<Value>(); // oldest first
+    private final ArrayDeque<Integer> freeSlots = new ArrayDeque<Integer>();
+
+    public RegisterAllocator(Program program)
+    {
+        this.program = program;
+        beginFunction(null);
+    }
+
+    // Starts over for the function whose frame spilled values are kept in
+    public void beginFunction(ActivationRecord frame)
+    {
+        this.frame = frame;
+        active.clear();
+        freeSlots.clear();
+        freeInts.clear();
+        freeFloats.clear();
+        for (int r : INT_REGISTERS)
+            freeInts.add(r);
+        for (int i = 0; i < NUM_FLOAT_REGISTERS; i++)
+            freeFloats.add(Register.f(i));
+    }
+
+    // A new value with a register to compute it into
+    public Value allocate(boolean isFloat)
+    {
+        Value v = new Value(isFloat, takeRegister(isFloat), false);
+        active.add(v);
+        return v;
+    }
+
+    // A value that some instruction has already left in reg, like $v0
+    // after a call.  A float left in an integer register is moved to a
+    // float register when it is first used.
+    public Value fixed(int reg, boolean isFloat)
+    {
+        Value v = new Value(isFloat, reg, true);
+        active.add(v);
+        return v;
+    }
+
+    // The register holding operand v, reloading it if it was spilled.
+    // v stays in that register until it is released.
+    public int use(Value v)
+    {
+        if (v.register == SPILLED) {
+            v.register = takeRegister(v.isFloat);
+            v.fixed = false;
+            program.appendInstruction(v.isFloat ? Opcode.LWC1 : Opcode.LW, v.register, v.slot, Register.FP);
+            freeSlots.push(v.slot);
+        } else if (v.isFloat && !Register.isFloat(v.register)) {
+            int reg = takeRegister(true);
+            program.appendInstruction(Opcode.MTC1, v.register, reg);
+            v.register = reg;
+            v.fixed = false;
+        }
+        v.pinned = true;
+        return v.register;
+    }
+
+    // v has had its last use
+    public void release(Value v)
+    {
+        active.remove(v);
+        if (v.register != SPILLED)
+            freeRegister(v);
+        else
+            freeSlots.push(v.slot);
+    }
+
+    // Moves every live value out of the registers, ahead of a call
+    public void spillAll()
+    {
+        for (Value v : active) {
+            if (v.register != SPILLED)
+                spill(v);
+        }
+    }
+
+    private int takeRegister(boolean isFloat)
+    {
+        ArrayDeque<Integer> free = isFloat ? freeFloats : freeInts;
+        if (free.isEmpty()) {
+            Value victim = null;
+            for (Value v : active) {
+                if (v.isFloat == isFloat && v.register != SPILLED && !v.pinned && !v.fixed) {
+                    victim = v;
+                    break;
+                }
+            }
+            if (victim == null)
+                throw new RuntimeException("Out of " + (isFloat ? "float" : "integer") + " registers");
+            spill(victim);
+        }
+        return free.pop();
+    }
+
+    private void spill(Value v)
+    {
+        v.slot = freeSlots.isEmpty() ? frame.addSpillSlot() : freeSlots.pop();
+        // a float can still be in the integer register it was returned in
+        program.appendInstruction(Register.isFloat(v.register) ? Opcode.SWC1 : Opcode.SW, v.register, v.slot, Register.FP);
+        freeRegister(v);
+        v.register = SPILLED;
+        v.pinned = false;
+    }
+
+    private void freeRegister(Value v)
+    {
+        if (v.fixed)
+            return;
+        (v.isFloat ? freeFloats : freeInts).push(v.register);
+    }
+}
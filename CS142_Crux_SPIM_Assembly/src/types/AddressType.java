@@ -1,14 +1,29 @@
 package types;
 
+import java.util.Arrays;
+import java.util.List;
+
 public class AddressType extends Type {
 	
 	private Type base;
 	
-	public AddressType(Type base)
+	private AddressType(Type base)
 	{
 		this.base = base;
 	}
 	
+	// The canonical address of base, if base is canonical itself
+	public static AddressType of(Type base)
+	{
+		if (!base.canonical)
+			return new AddressType(base);
+		List<Object> key = Arrays.<Object>asList("address", base);
+		Type t = lookup(key);
+		if (t != null)
+			return (AddressType)t;
+		return intern(key, new AddressType(base));
+	}
+	
 	public Type base()
 	{
 		return base;
@@ -25,7 +40,7 @@ public class AddressType extends Type {
 	{
 		if (!base.equivalent(that))
 			return super.assign(that);
-		return new VoidType();
+		return VOID;
 	}
 	
 	@Override
@@ -33,7 +48,7 @@ public class AddressType extends Type {
 	{
 		if (!(base instanceof ArrayType))
 			return super.index(that);
-		return new AddressType(base.index(that));
+		return AddressType.of(base.index(that));
 	}
 	
 	@Override
@@ -44,12 +59,14 @@ public class AddressType extends Type {
 
 	@Override
 	public boolean equivalent(Type that) {
-		if (that == null)
-			return false;
+		if (that == this)
+			return true;
 		if (!(that instanceof AddressType))
 			return false;
 		
 		AddressType aType = (AddressType)that;
+		if (canonical && aType.canonical)
+			return false;
 		return this.base.equivalent(aType.base);
 	}
 }
@@ -1,16 +1,31 @@
 package types;
 
+import java.util.Arrays;
+import java.util.List;
+
 public class ArrayType extends Type {
 	
 	private Type base;
 	private int extent;
 	
-	public ArrayType(int extent, Type base)
+	private ArrayType(int extent, Type base)
 	{
 		this.extent = extent;
 		this.base = base;
 	}
 	
+	// The canonical array type over base, if base is canonical itself
+	public static ArrayType of(int extent, Type base)
+	{
+		if (!base.canonical)
+			return new ArrayType(extent, base);
+		List<Object> key = Arrays.<Object>asList("array", extent, base);
+		Type t = lookup(key);
+		if (t != null)
+			return (ArrayType)t;
+		return intern(key, new ArrayType(extent, base));
+	}
+	
 	public int extent()
 	{
 		return extent;
@@ -37,12 +52,14 @@ public class ArrayType extends Type {
 	@Override
 	public boolean equivalent(Type that)
 	{
-		if (that == null)
-			return false;
-		if (!(that instanceof IntType))
+		if (that == this)
+			return true;
+		if (!(that instanceof ArrayType))
 			return false;
 		
 		ArrayType aType = (ArrayType)that;
+		if (canonical && aType.canonical)
+			return false;
 		return this.extent == aType.extent && base.equivalent(aType.base);
 	}
 }
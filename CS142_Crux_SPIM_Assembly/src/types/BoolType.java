@@ -2,8 +2,9 @@ package types;
 
 public class BoolType extends Type {
 	
-	public BoolType()
+	BoolType()
 	{
+		canonical = true;
 	}
 	
 	@Override
@@ -17,7 +18,7 @@ public class BoolType extends Type {
 	{
 		if (!(that instanceof BoolType))
 			return super.and(that);
-		return new BoolType();
+		return BOOL;
 	}
 	
 	@Override
@@ -25,23 +26,18 @@ public class BoolType extends Type {
 	{
 		if (!(that instanceof BoolType))
 			return super.or(that);
-		return new BoolType();
+		return BOOL;
 	}
 	
 	@Override
 	public Type not()
 	{
-		return new BoolType();
+		return BOOL;
 	}
 	
 	@Override
 	public boolean equivalent(Type that)
 	{
-		if (that == null)
-			return false;
-		if (!(that instanceof BoolType))
-			return false;
-		
-		return true;
+		return that == this;
 	}
 }	
\ No newline at end of file
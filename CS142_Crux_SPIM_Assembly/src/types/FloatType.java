@@ -2,8 +2,9 @@ package types;
 
 public class FloatType extends Type {
 	
-	public FloatType()
+	FloatType()
 	{
+		canonical = true;
 	}
 	
 	@Override
@@ -17,7 +18,7 @@ public class FloatType extends Type {
 	{
 		if (!(that instanceof FloatType))
 			return super.add(that);
-		return new FloatType();
+		return FLOAT;
 	}
 	
 	@Override
@@ -25,7 +26,7 @@ public class FloatType extends Type {
 	{
 		if (!(that instanceof FloatType))
 			return super.sub(that);
-		return new FloatType();
+		return FLOAT;
 	}
 	
 	@Override
@@ -33,7 +34,7 @@ public class FloatType extends Type {
 	{
 		if (!(that instanceof FloatType))
 			return super.mul(that);
-		return new FloatType();
+		return FLOAT;
 	}
 	
 	@Override
@@ -41,7 +42,7 @@ public class FloatType extends Type {
 	{
 		if (!(that instanceof FloatType))
 			return super.div(that);
-		return new FloatType();
+		return FLOAT;
 	}
 		
 	@Override
@@ -49,16 +50,12 @@ public class FloatType extends Type {
 	{
 		if (!(that instanceof FloatType))
 			return super.compare(that);
-		return new BoolType();
+		return BOOL;
 	}
 	
 	@Override
 	public boolean equivalent(Type that)
 	{
-		if (that == null)
-			return false;
-		if (!(that instanceof FloatType))
-			return false;
-		return true;
+		return that == this;
 	}
 }
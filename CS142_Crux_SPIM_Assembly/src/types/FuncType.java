@@ -1,16 +1,31 @@
 package types;
 
+import java.util.Arrays;
+import java.util.List;
+
 public class FuncType extends Type {
    
    private TypeList args;
    private Type ret;
    
-   public FuncType(TypeList args, Type returnType)
+   private FuncType(TypeList args, Type returnType)
    {
       this.args = args;
       this.ret = returnType;
    }
    
+   // The canonical function type, if its arguments and return type are canonical
+   public static FuncType of(TypeList args, Type returnType)
+   {
+      if (!args.canonical || !returnType.canonical)
+         return new FuncType(args, returnType);
+      List<Object> key = Arrays.<Object>asList("func", args, returnType);
+      Type t = lookup(key);
+      if (t != null)
+         return (FuncType)t;
+      return intern(key, new FuncType(args, returnType));
+   }
+   
    public Type returnType()
    {
       return ret;
@@ -38,12 +53,14 @@ public class FuncType extends Type {
    @Override
    public boolean equivalent(Type that)
    {
-      if (that == null)
-         return false;
+      if (that == this)
+         return true;
       if (!(that instanceof FuncType))
          return false;
       
       FuncType aType = (FuncType)that;
+      if (canonical && aType.canonical)
+         return false;
       return this.ret.equivalent(aType.ret) && this.args.equivalent(aType.args);
    }
 }
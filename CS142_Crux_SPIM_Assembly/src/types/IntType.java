@@ -2,7 +2,8 @@ package types;
 
 public class IntType extends Type {
 
-	public IntType() {
+	IntType() {
+		canonical = true;
 	}
 
 	@Override
@@ -14,43 +15,39 @@ public class IntType extends Type {
 	public Type add(Type that) {
 		if (!(that instanceof IntType))
 			return super.add(that);
-		return new IntType();
+		return INT;
 	}
 
 	@Override
 	public Type sub(Type that) {
 		if (!(that instanceof IntType))
 			return super.sub(that);
-		return new IntType();
+		return INT;
 	}
 
 	@Override
 	public Type mul(Type that) {
 		if (!(that instanceof IntType))
 			return super.mul(that);
-		return new IntType();
+		return INT;
 	}
 
 	@Override
 	public Type div(Type that) {
 		if (!(that instanceof IntType))
 			return super.div(that);
-		return new IntType();
+		return INT;
 	}
 
 	@Override
 	public Type compare(Type that) {
 		if (!(that instanceof IntType))
 			return super.compare(that);
-		return new BoolType();
+		return BOOL;
 	}
 
 	@Override
 	public boolean equivalent(Type that) {
-		if (that == null)
-			return false;
-		if (!(that instanceof IntType))
-			return false;
-		return true;
+		return that == this;
 	}
 }
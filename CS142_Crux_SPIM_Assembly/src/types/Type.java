@@ -1,13 +1,85 @@
 package types;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
 public abstract class Type {
 	
+	// The only instances of the primitive types, their constructors are
+	// package-private
+	public static final IntType INT = new IntType();
+	public static final FloatType FLOAT = new FloatType();
+	public static final BoolType BOOL = new BoolType();
+	public static final VoidType VOID = new VoidType();
+	
+	// Composite types made of canonical parts are hash-consed here, keyed on
+	// their kind and parts.  The parts are compared by reference.  Entries
+	// hold their type weakly: a long-running compile server sees a stream of
+	// programs, and a type no live tree refers to any more is dropped from the
+	// table once it is collected, which in turn releases its parts.
+	private static final ConcurrentHashMap<List<Object>, Entry> composites = new ConcurrentHashMap<List<Object>, Entry>();
+	private static final ReferenceQueue<Type> collected = new ReferenceQueue<Type>();
+	
+	private static final class Entry extends WeakReference<Type>
+	{
+		final List<Object> key;
+		
+		Entry(List<Object> key, Type type)
+		{
+			super(type, collected);
+			this.key = key;
+		}
+	}
+	
+	// True for the one instance of each structure.  Two canonical types
+	// are equivalent exactly when they are the same object.  Error types,
+	// and composites built from them, are never canonical.
+	boolean canonical;
+	
+	static Type lookup(List<Object> key)
+	{
+		Entry e = composites.get(key);
+		return e == null ? null : e.get();
+	}
+	
+	@SuppressWarnings("unchecked")
+	static <T extends Type> T intern(List<Object> key, T type)
+	{
+		expunge();
+		type.canonical = true;
+		Entry entry = new Entry(key, type);
+		while (true) {
+			Entry existing = composites.putIfAbsent(key, entry);
+			if (existing == null)
+				return type;
+			Type t = existing.get();
+			if (t != null)
+				return (T)t;
+			// collected, but its entry is not expunged yet
+			if (composites.replace(key, existing, entry))
+				return type;
+		}
+	}
+	
+	// Drops the entries of collected types
+	private static void expunge()
+	{
+		Reference<? extends Type> r;
+		while ((r = collected.poll()) != null) {
+			Entry e = (Entry)r;
+			composites.remove(e.key, e);
+		}
+	}
+	
 	public static Type getBaseType(String typeStr)
 	{
-		if (typeStr.equals("int")) return new IntType();
-		if (typeStr.equals("float")) return new FloatType();
-		if (typeStr.equals("bool")) return new BoolType();
-		if (typeStr.equals("void")) return new VoidType();
+		if (typeStr.equals("int")) return INT;
+		if (typeStr.equals("float")) return FLOAT;
+		if (typeStr.equals("bool")) return BOOL;
+		if (typeStr.equals("void")) return VOID;
 		return new ErrorType("Unkown type: " + typeStr);
 	}
 	
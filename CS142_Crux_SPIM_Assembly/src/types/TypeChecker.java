@@ -1,12 +1,12 @@
 package types;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 
 import ast.*;
 
 public class TypeChecker implements CommandVisitor {
     
-    private HashMap<Command, Type> typeMap = new HashMap<Command, Type>();
     private StringBuffer errorBuffer = new StringBuffer();
     private crux.Symbol currentFunction = crux.Symbol.newError("FunctionReturnType not set.");
 
@@ -45,7 +45,7 @@ public class TypeChecker implements CommandVisitor {
         if (!func.name().equals("main"))
             return;
             
-        Type sig = new FuncType(new TypeList(), new VoidType());
+        Type sig = FuncType.of(TypeList.of(), Type.VOID);
         if (sig.equivalent(func.type()))
             return;
             
@@ -78,12 +78,18 @@ public class TypeChecker implements CommandVisitor {
             reportError(node.lineNumber(), node.charPosition(),
                ((ErrorType)type).getMessage());
         }
-        typeMap.put(node, type);
+        node.annotateType(this, type);
     }
     
     public Type getType(Command node)
     {
-        return typeMap.get(node);
+        return node.annotatedType(this);
+    }
+    
+    // Expressions and statements are interfaces, every node is a Command
+    private Type typeOf(Object node)
+    {
+        return ((Command)node).annotatedType(this);
     }
     
     public boolean check(Command ast)
@@ -104,12 +110,12 @@ public class TypeChecker implements CommandVisitor {
 
     @Override
     public void visit(ExpressionList node) {
-        TypeList tlist = new TypeList();
+        List<Type> types = new ArrayList<Type>(node.size());
         for (Expression e : node) {
             e.accept(this);
-            tlist.append(typeMap.get(e));
+            types.add(typeOf(e));
         }
-        put(node, tlist);
+        put(node, TypeList.of(types));
     }
 
     @Override
@@ -126,34 +132,34 @@ public class TypeChecker implements CommandVisitor {
 
     @Override
     public void visit(AddressOf node) {
-        put(node, new AddressType(node.symbol().type()));
+        put(node, AddressType.of(node.symbol().type()));
     }
 
     @Override
     public void visit(LiteralBool node) {
-        put(node, new BoolType());
+        put(node, Type.BOOL);
     }
 
     @Override
     public void visit(LiteralFloat node) {
-        put(node, new FloatType());
+        put(node, Type.FLOAT);
     }
 
     @Override
     public void visit(LiteralInt node) {
-        put(node, new IntType());
+        put(node, Type.INT);
     }
 
     @Override
     public void visit(VariableDeclaration node) {
         Type t = node.symbol().type();
 
-        if (t.equivalent(new BoolType()))
-          put(node, new VoidType());
-        else if (t.equivalent(new IntType()))
-          put(node, new VoidType());
-        else if (t.equivalent(new FloatType()))
-          put(node, new VoidType());
+        if (t.equivalent(Type.BOOL))
+          put(node, Type.VOID);
+        else if (t.equivalent(Type.INT))
+          put(node, Type.VOID);
+        else if (t.equivalent(Type.FLOAT))
+          put(node, Type.VOID);
         else
           reportError(node.lineNumber(), node.charPosition(),
             "Variable " + node.symbol().name() + " has invalid type " + t + ".");
@@ -166,22 +172,22 @@ public class TypeChecker implements CommandVisitor {
         while (t instanceof ArrayType)
            t = ((ArrayType)t).base();
         
-        if (t.equivalent(new BoolType()))
-          put(node, new VoidType());
-        else if (t.equivalent(new IntType()))
-          put(node, new VoidType());
-        else if (t.equivalent(new FloatType()))
-          put(node, new VoidType());
+        if (t.equivalent(Type.BOOL))
+          put(node, Type.VOID);
+        else if (t.equivalent(Type.INT))
+          put(node, Type.VOID);
+        else if (t.equivalent(Type.FLOAT))
+          put(node, Type.VOID);
         else
           reportError(node.lineNumber(), node.charPosition(),
             "Array " + node.symbol().name() + " has invalid base type " + t + ".");
 
-        put(node, new VoidType());
+        put(node, Type.VOID);
     }
 
     @Override
     public void visit(FunctionDefinition node) {
-        put(node, new VoidType());
+        put(node, Type.VOID);
         crux.Symbol rememberFunction = currentFunction;
         currentFunction = node.symbol();
         checkForBadArgument(node);
@@ -198,102 +204,102 @@ public class TypeChecker implements CommandVisitor {
     @Override
     public void visit(Comparison node) {
         node.leftSide().accept(this);
-        Type leftType = typeMap.get(node.leftSide());
+        Type leftType = typeOf(node.leftSide());
         node.rightSide().accept(this);
-        Type rightType = typeMap.get(node.rightSide());
+        Type rightType = typeOf(node.rightSide());
         put(node, leftType.compare(rightType));
     }
     
     @Override
     public void visit(Addition node) {
         node.leftSide().accept(this);
-        Type leftType = typeMap.get(node.leftSide());
+        Type leftType = typeOf(node.leftSide());
         node.rightSide().accept(this);
-        Type rightType = typeMap.get(node.rightSide());
+        Type rightType = typeOf(node.rightSide());
         put(node, leftType.add(rightType));
     }
     
     @Override
     public void visit(Subtraction node) {
         node.leftSide().accept(this);
-        Type leftType = typeMap.get(node.leftSide());
+        Type leftType = typeOf(node.leftSide());
         node.rightSide().accept(this);
-        Type rightType = typeMap.get(node.rightSide());
+        Type rightType = typeOf(node.rightSide());
         put(node, leftType.sub(rightType));
     }
     
     @Override
     public void visit(Multiplication node) {
         node.leftSide().accept(this);
-        Type leftType = typeMap.get(node.leftSide());
+        Type leftType = typeOf(node.leftSide());
         node.rightSide().accept(this);
-        Type rightType = typeMap.get(node.rightSide());
+        Type rightType = typeOf(node.rightSide());
         put(node, leftType.mul(rightType));
     }
     
     @Override
     public void visit(Division node) {
         node.leftSide().accept(this);
-        Type leftType = typeMap.get(node.leftSide());
+        Type leftType = typeOf(node.leftSide());
         node.rightSide().accept(this);
-        Type rightType = typeMap.get(node.rightSide());
+        Type rightType = typeOf(node.rightSide());
         put(node, leftType.div(rightType));
     }
     
     @Override
     public void visit(LogicalAnd node) {
         node.leftSide().accept(this);
-        Type leftType = typeMap.get(node.leftSide());
+        Type leftType = typeOf(node.leftSide());
         node.rightSide().accept(this);
-        Type rightType = typeMap.get(node.rightSide());
+        Type rightType = typeOf(node.rightSide());
         put(node, leftType.and(rightType));
     }
 
     @Override
     public void visit(LogicalOr node) {
         node.leftSide().accept(this);
-        Type leftType = typeMap.get(node.leftSide());
+        Type leftType = typeOf(node.leftSide());
         node.rightSide().accept(this);
-        Type rightType = typeMap.get(node.rightSide());
+        Type rightType = typeOf(node.rightSide());
         put(node, leftType.or(rightType));
     }
 
     @Override
     public void visit(LogicalNot node) {
         node.expression().accept(this);
-        Type exprType = typeMap.get(node.expression());
+        Type exprType = typeOf(node.expression());
         put(node, exprType.not());
     }
     
     @Override
     public void visit(Dereference node) {
         node.expression().accept(this);
-        Type exprType = typeMap.get(node.expression());
+        Type exprType = typeOf(node.expression());
         put(node, exprType.deref());
     }
 
     @Override
     public void visit(Index node) {
         node.base().accept(this);
-        Type baseType = typeMap.get(node.base());
+        Type baseType = typeOf(node.base());
         node.amount().accept(this);
-        Type amountType = typeMap.get(node.amount());
+        Type amountType = typeOf(node.amount());
         put(node,  baseType.index(amountType));
     }
 
     @Override
     public void visit(Assignment node) {
         node.destination().accept(this);
-        Type destType = typeMap.get(node.destination());
+        Type destType = typeOf(node.destination());
         node.source().accept(this);
-        Type srcType = typeMap.get(node.source());
+        Type srcType = typeOf(node.source());
         put(node, destType.assign(srcType));
     }
 
     @Override
     public void visit(Call node) {
         node.arguments().accept(this);
-        Type args = typeMap.get(node.arguments());
+        Type args = typeOf(node.arguments());
         put(node, node.function().type().call(args));
     }
 
@@ -301,37 +307,37 @@ public class TypeChecker implements CommandVisitor {
     public void visit(IfElseBranch node) {
         assert(false);
         node.condition().accept(this);
-        Type condType = typeMap.get(node.condition());
+        Type condType = typeOf(node.condition());
         node.thenBlock().accept(this);
         node.elseBlock().accept(this);
         
         if (!(condType instanceof BoolType))
             put(node, new ErrorType("IfElseBranch requires bool condition not " + condType + "."));
         else
-            put(node, new VoidType());
+            put(node, Type.VOID);
     }
 
     @Override
     public void visit(WhileLoop node) {
         node.condition().accept(this);
-        Type condType = typeMap.get(node.condition());
+        Type condType = typeOf(node.condition());
         node.body().accept(this);
         
         if (!(condType instanceof BoolType))
             put(node, new ErrorType("WhileLoop requires bool condition not " + condType + "."));
         else
-            put(node, new VoidType());    
+            put(node, Type.VOID);    
     }
 
     @Override
     public void visit(Return node) {
         node.argument().accept(this);
-        Type retType = typeMap.get(node.argument());
+        Type retType = typeOf(node.argument());
         
         if (!retType.equivalent(currentReturnType()))
             put(node, new ErrorType("Function " + currentFunction.name() + " returns " + currentReturnType() + " not " + retType + "."));
         else
-            put(node, new VoidType());
+            put(node, Type.VOID);
     }
 
     @Override
@@ -1,6 +1,8 @@
 package types;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
@@ -8,14 +10,36 @@ public class TypeList extends Type implements Iterable<Type> {
 	
 	private List<Type> list;
 	
-	public TypeList()
+	private TypeList(List<Type> types)
 	{
-		list = new ArrayList<Type>();
+		this.list = Collections.unmodifiableList(new ArrayList<Type>(types));
 	}
 	
-	public void append(Type type)
+	// The canonical list of these types, if they are all canonical.
+	// The types are copied, the caller may go on changing its list.
+	public static TypeList of(List<Type> types)
 	{
-		list.add(type);
+		for (Type t : types) {
+			if (!t.canonical)
+				return new TypeList(types);
+		}
+		List<Object> key = new ArrayList<Object>(types.size() + 1);
+		key.add("list");
+		key.addAll(types);
+		Type t = lookup(key);
+		if (t != null)
+			return (TypeList)t;
+		return intern(key, new TypeList(types));
+	}
+	
+	public static TypeList of(Type... types)
+	{
+		return of(Arrays.asList(types));
+	}
+	
+	public int size()
+	{
+		return list.size();
 	}
 	
 	@Override
@@ -33,10 +57,12 @@ public class TypeList extends Type implements Iterable<Type> {
 	
     @Override
 	public boolean equivalent(Type that) {
-		if (that == null)
-			return false;
+		if (that == this)
+			return true;
 		if (!(that instanceof TypeList))
 			return false;
+		if (canonical && that.canonical)
+			return false;
 		
 		List<Type> olist = ((TypeList)that).list;
 		
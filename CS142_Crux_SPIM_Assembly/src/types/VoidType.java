@@ -2,8 +2,9 @@ package types;
 
 public class VoidType extends Type {
 	
-	public VoidType()
+	VoidType()
 	{
+		canonical = true;
 	}
 	
 	@Override
@@ -15,10 +16,6 @@ public class VoidType extends Type {
 	@Override
 	public boolean equivalent(Type that)
 	{
-		if (that == null)
-			return false;
-		if (!(that instanceof VoidType))
-			return false;
-		return true;
+		return that == this;
 	}
 }